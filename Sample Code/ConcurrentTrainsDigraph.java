@@ -0,0 +1,231 @@
+/*************************************************************************
+ *  Compilation:  javac ConcurrentTrainsDigraph.java
+ *  Execution:    java ConcurrentTrainsDigraph
+ *  Dependencies: TrainsCSR.java, DirectedEdge.java, TrainsSP.java
+ *
+ *  Thread-safe edge-weighted digraph built on immutable TrainsCSR
+ *  snapshots. Readers pin the current snapshot with one volatile read and
+ *  never take a lock; the snapshot they hold stays consistent however many
+ *  updates are published after it. Writers batch their edge inserts, copy
+ *  the current snapshot together with the new edges into a fresh one, and
+ *  publish it atomically with a new version number. Writers are serialized
+ *  among themselves, so no update is lost.
+ *
+ *  Every commit rebuilds the whole snapshot, which costs O(V + E) however
+ *  few edges it adds, so a stream of single-edge addEdge calls costs
+ *  O(V + E) per edge; writers that add many edges should group them into
+ *  one Batch. A Batch itself is not thread-safe and belongs to the thread
+ *  that created it; threads that write concurrently each take their own.
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ConcurrentTrainsDigraph
+{
+    /* a published snapshot together with its version number */
+    public static final class Snapshot
+    {
+        private final TrainsCSR graph;
+        private final long version;
+
+        private Snapshot(TrainsCSR graph, long version)
+        {
+            this.graph = graph;
+            this.version = version;
+        }
+
+        public TrainsCSR graph() { return graph;   }
+        public long version()    { return version; }
+    }
+
+    /* a group of edges published together by commit(); for use by one
+     * thread only, unlike the graph it commits to */
+    public final class Batch
+    {
+        private final List<DirectedEdge> edges = new ArrayList<DirectedEdge>();
+
+        /* queue an edge for the next commit */
+        public Batch add(DirectedEdge e)
+        {
+            edges.add(e);
+            return this;
+        }
+
+        /* publish the queued edges as one new version and return it */
+        public long commit()
+        {
+            long version = addEdges(edges);
+            edges.clear();
+            return version;
+        }
+    }
+
+    private final AtomicReference<Snapshot> current;
+    private final ReentrantLock write_lock = new ReentrantLock();
+
+    /* create an empty graph */
+    public ConcurrentTrainsDigraph()
+    {
+        this(new TrainsCSR(new String[0], new int[0], new int[0], new int[0], 0));
+    }
+
+    /* create a graph whose first version is the given snapshot */
+    public ConcurrentTrainsDigraph(TrainsCSR initial)
+    {
+        current = new AtomicReference<Snapshot>(new Snapshot(initial, 0));
+    }
+
+    /* pin the current snapshot and its version; never blocks */
+    public Snapshot pin()
+    {
+        return current.get();
+    }
+
+    /* the current snapshot; never blocks */
+    public TrainsCSR snapshot()
+    {
+        return current.get().graph();
+    }
+
+    /* the version of the current snapshot */
+    public long getVersion()
+    {
+        return current.get().version();
+    }
+
+    /* start a batch of edge inserts, owned by the calling thread */
+    public Batch batch()
+    {
+        return new Batch();
+    }
+
+    /* add one edge, publishing a new version; rebuilds the snapshot in
+     * O(V + E), so prefer a Batch for many edges */
+    public long addEdge(DirectedEdge e)
+    {
+        return addEdges(Collections.singletonList(e));
+    }
+
+    /* add all the edges as one new version and return its number; the
+     * snapshot is rebuilt in O(V + E + edges.size()) */
+    public long addEdges(Collection<DirectedEdge> edges)
+    {
+        write_lock.lock();
+        try {
+            Snapshot old = current.get();
+            if (edges.isEmpty()) return old.version();
+            TrainsCSR G = old.graph();
+            int V = G.V(), E = G.E(), n = edges.size();
+
+            // vertex ids: the old ones, then any new stations in order
+            String[] names = new String[V + 2 * n];
+            for (int v = 0; v < V; v++) names[v] = G.nameOf(v);
+            Map<String, Integer> new_ids = new HashMap<String, Integer>();
+            int num_names = V;
+
+            int[] from = new int[E + n], to = new int[E + n], weight = new int[E + n];
+            for (int e = 0; e < E; e++)
+            {
+                from[e] = G.outFrom(e);
+                to[e] = G.outTo(e);
+                weight[e] = G.outWeight(e);
+            }
+            int i = E;
+            for (DirectedEdge e : edges)
+            {
+                int v = G.indexOf(e.from());
+                if (v < 0)
+                {
+                    Integer id = new_ids.get(e.from());
+                    if (id == null)
+                    {
+                        id = num_names;
+                        names[num_names++] = e.from();
+                        new_ids.put(e.from(), id);
+                    }
+                    v = id;
+                }
+                int w = G.indexOf(e.to());
+                if (w < 0)
+                {
+                    Integer id = new_ids.get(e.to());
+                    if (id == null)
+                    {
+                        id = num_names;
+                        names[num_names++] = e.to();
+                        new_ids.put(e.to(), id);
+                    }
+                    w = id;
+                }
+                from[i] = v;
+                to[i] = w;
+                weight[i] = e.weight();
+                i++;
+            }
+
+            TrainsCSR next = new TrainsCSR(Arrays.copyOf(names, num_names), from, to, weight, i);
+            Snapshot published = new Snapshot(next, old.version() + 1);
+            current.set(published);
+            return published.version();
+        }
+        finally {
+            write_lock.unlock();
+        }
+    }
+
+    /**
+     * Test client: readers run shortest path queries while a writer
+     * publishes new edges.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        final ConcurrentTrainsDigraph G = new ConcurrentTrainsDigraph();
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        Batch batch = G.batch();
+        for (String edge : edges) {
+            batch.add(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        batch.commit();
+
+        final long[] queries = new long[4];
+        Thread[] readers = new Thread[queries.length];
+        for (int r = 0; r < readers.length; r++) {
+            final int id = r;
+            readers[r] = new Thread() {
+                public void run() {
+                    for (int q = 0; q < 20000; q++) {
+                        TrainsCSR pinned = G.snapshot();
+                        TrainsSP sp = new TrainsSP(pinned, "A", "C");
+                        if (sp.distTo("C") > 9) throw new IllegalStateException("bad distance");
+                        queries[id]++;
+                    }
+                }
+            };
+            readers[r].start();
+        }
+
+        // a new branch line, one station at a time
+        for (int s = 0; s < 200; s++) {
+            G.batch().add(new DirectedEdge(s == 0 ? "E" : "X" + (s - 1), "X" + s, 1))
+                     .add(new DirectedEdge("X" + s, "E", 1))
+                     .commit();
+        }
+        for (Thread reader : readers) reader.join();
+
+        long total = 0;
+        for (long q : queries) total += q;
+        TrainsCSR last = G.snapshot();
+        System.out.println("version " + G.getVersion() + ": " + last.V() + " vertices, "
+                           + last.E() + " edges; " + total + " queries answered");
+        System.out.println("A to C = " + new TrainsSP(last, "A", "C").distTo("C"));
+    }
+}
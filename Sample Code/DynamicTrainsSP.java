@@ -0,0 +1,223 @@
+/*************************************************************************
+ *  Compilation:  javac DynamicTrainsSP.java
+ *  Execution:    java DynamicTrainsSP
+ *  Dependencies: TrainsDigraph.java, TrainsCSR.java, IndexMinIntPQ.java
+ *                DirectedEdge.java, TrainsSP.java
+ *
+ *  Shortest path tree from one source that is kept up to date as edges
+ *  are added. Edges added through this object are forwarded to the graph,
+ *  and the tree is repaired instead of recomputed: when the new edge u->v
+ *  shortens the path to v, v is put on the priority queue with its new
+ *  distance and Dijkstra's relaxation runs from there, so only the
+ *  vertices whose distance actually drops are touched. A lower weight for
+ *  an existing connection is an insertion of a lighter parallel edge, and
+ *  is repaired the same way. The tree keeps its own forward-star copy of
+ *  the adjacency lists, which grows by one edge per insertion.
+ *
+ *  If the graph is changed behind this object's back, the tree notices
+ *  from the graph's version and is rebuilt in full on the next update or
+ *  refresh().
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+public class DynamicTrainsSP {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private final TrainsDigraph graph;
+    private final String source;
+    private long version;              // version of graph the tree is current for
+
+    /* adjacency: head[v] = last edge added out of v, next[e] = the one before, -1 = none */
+    private int[] head = new int[0];
+    private int[] from = new int[16], to = new int[16], weight = new int[16], next = new int[16];
+    private int num_vertices = 0, num_edges = 0;
+
+    private int[] distTo = new int[0]; // distTo[v] = distance of shortest source->v path
+    private int[] edgeTo = new int[0]; // edgeTo[v] = last edge on that path, -1 if none
+    private IndexMinIntPQ pq = new IndexMinIntPQ(0);
+    private int src_index;
+    private int last_settled;          // vertices settled by the last update
+
+    /* compute the shortest path tree from source in G */
+    public DynamicTrainsSP(TrainsDigraph G, String source) {
+        this.graph = G;
+        this.source = source;
+        rebuild();
+    }
+
+    /* recompute the whole tree from the current state of the graph */
+    private void rebuild() {
+        TrainsCSR G = graph.snapshot();
+        version = graph.getVersion();
+        src_index = G.indexOf(source);
+        if (src_index < 0) throw new IllegalArgumentException("no such vertex: " + source);
+
+        num_vertices = 0;
+        num_edges = 0;
+        grow(G.V());
+        for (int e = 0; e < G.E(); e++) append(G.outFrom(e), G.outTo(e), G.outWeight(e));
+
+        Arrays.fill(distTo, 0, num_vertices, INFINITY);
+        Arrays.fill(edgeTo, 0, num_vertices, -1);
+        distTo[src_index] = 0;
+        pq.clear();
+        pq.insert(src_index, 0);
+        relaxAll();
+    }
+
+    /* make room for vertex ids up to V-1 */
+    private void grow(int V) {
+        if (V > head.length)
+        {
+            int n = Math.max(V, 2 * head.length);
+            head = Arrays.copyOf(head, n);
+            distTo = Arrays.copyOf(distTo, n);
+            edgeTo = Arrays.copyOf(edgeTo, n);
+            pq = new IndexMinIntPQ(n);
+        }
+        for (int v = num_vertices; v < V; v++)
+        {
+            head[v] = -1;
+            distTo[v] = INFINITY;
+            edgeTo[v] = -1;
+        }
+        num_vertices = Math.max(num_vertices, V);
+    }
+
+    /* add edge v->w to the adjacency copy and return its index */
+    private int append(int v, int w, int wt) {
+        if (num_edges == from.length)
+        {
+            from = Arrays.copyOf(from, 2 * num_edges);
+            to = Arrays.copyOf(to, 2 * num_edges);
+            weight = Arrays.copyOf(weight, 2 * num_edges);
+            next = Arrays.copyOf(next, 2 * num_edges);
+        }
+        int e = num_edges++;
+        from[e] = v;
+        to[e] = w;
+        weight[e] = wt;
+        next[e] = head[v];
+        head[v] = e;
+        return e;
+    }
+
+    /* run Dijkstra's relaxation until the pq is empty */
+    private void relaxAll() {
+        last_settled = 0;
+        while (!pq.isEmpty())
+        {
+            int v = pq.delMin();
+            last_settled++;
+            for (int e = head[v]; e != -1; e = next[e])
+                relax(e);
+        }
+    }
+
+    /* relax edge e and update pq if changed */
+    private void relax(int e) {
+        int v = from[e], w = to[e];
+        if (distTo[v] == INFINITY) return;
+        if (distTo[w] > distTo[v] + weight[e]) {
+            distTo[w] = distTo[v] + weight[e];
+            edgeTo[w] = e;
+            if (pq.contains(w)) pq.decreaseKey(w, distTo[w]);
+            else                pq.insert(w, distTo[w]);
+        }
+    }
+
+    /* add edge e to the graph and repair the tree; returns the number of
+     * vertices whose shortest path was settled again */
+    public int addEdge(DirectedEdge e) {
+        if (isStale())
+        {
+            graph.addEdge(e);
+            rebuild();
+            return last_settled;
+        }
+        graph.addEdge(e);
+        version = graph.getVersion();
+        int v = graph.indexOf(e.from()), w = graph.indexOf(e.to());
+        grow(Math.max(v, w) + 1);
+        int id = append(v, w, e.weight());
+        pq.clear();
+        relax(id);
+        relaxAll();
+        return last_settled;
+    }
+
+    /* has the graph been changed other than through this object? */
+    public boolean isStale() {
+        return graph.getVersion() != version;
+    }
+
+    /* bring the tree up to date with the graph if it is stale */
+    public void refresh() {
+        if (isStale()) rebuild();
+    }
+
+    /* number of vertices settled by the last update or rebuild */
+    public int getSettledCount() {
+        return last_settled;
+    }
+
+    /* return the id of vertex V, checking that it is in the tree */
+    private int index(String V) {
+        int v = graph.indexOf(V);
+        if (v < 0 || v >= num_vertices) throw new IllegalArgumentException("no such vertex: " + V);
+        return v;
+    }
+
+    /* length of the shortest path from the source to V */
+    public double distTo(String V) {
+        return distTo[index(V)];
+    }
+
+    // is there a path from the source to V?
+    public boolean hasPathTo(String V) {
+        return distTo[index(V)] < INFINITY;
+    }
+
+    /* shortest path from the source to V as an Iterable, null if no such path */
+    public Iterable<DirectedEdge> pathTo(String V) {
+        int v = index(V);
+        if (distTo[v] == INFINITY) return null;
+        LinkedList<DirectedEdge> path = new LinkedList<DirectedEdge>();
+        for (int e = edgeTo[v]; e != -1; e = edgeTo[from[e]]) {
+            path.push(new DirectedEdge(graph.nameOf(from[e]), graph.nameOf(to[e]), weight[e]));
+        }
+        return path;
+    }
+
+    // test method
+    public static void main(String[] args) {
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        DynamicTrainsSP sp = new DynamicTrainsSP(G, "A");
+        System.out.println("A to C : " + sp.pathTo("C") + "; length = " + sp.distTo("C")
+                           + ", settled " + sp.getSettledCount());
+
+        // a faster A->C service, then a new station F
+        int n = sp.addEdge(new DirectedEdge("A", "C", 3));
+        System.out.println("A to C : " + sp.pathTo("C") + "; length = " + sp.distTo("C")
+                           + ", settled " + n);
+        n = sp.addEdge(new DirectedEdge("E", "F", 1));
+        System.out.println("A to F : " + sp.pathTo("F") + "; length = " + sp.distTo("F")
+                           + ", settled " + n);
+        System.out.println("from scratch A to F : " + new TrainsSP(G, "A", "F").distTo("F"));
+
+        // a change made directly on the graph forces a rebuild
+        G.addEdge(new DirectedEdge("A", "B", 1));
+        System.out.println("stale: " + sp.isStale());
+        sp.refresh();
+        System.out.println("A to B : " + sp.pathTo("B") + "; length = " + sp.distTo("B")
+                           + ", stale: " + sp.isStale());
+    }
+}
@@ -0,0 +1,195 @@
+/*************************************************************************
+ *  Compilation:  javac IndexMinIntPQ.java
+ *  Execution:    java IndexMinIntPQ
+ *
+ *  Indexed PQ with primitive int keys, implemented using a d-ary heap
+ *  (binary by default). Same API as IndexMinPQ, but keys are never boxed
+ *  and comparisons are plain int comparisons. clear() empties the queue in
+ *  time proportional to its size, so one instance can be reused across
+ *  many searches without reallocating its arrays.
+ *
+ *********************************************************************/
+
+import java.util.NoSuchElementException;
+
+public class IndexMinIntPQ {
+    private final int D;     // arity of the heap
+    private int N;           // number of elements on PQ
+    private int[] pq;        // d-ary heap using 0-based indexing
+    private int[] qp;        // inverse of pq - qp[pq[i]] = pq[qp[i]] = i
+    private int[] keys;      // keys[i] = priority of i
+
+    public IndexMinIntPQ(int NMAX) {
+        this(NMAX, 2);
+    }
+
+    public IndexMinIntPQ(int NMAX, int arity) {
+        if (arity < 2) throw new IllegalArgumentException("arity must be at least 2");
+        D    = arity;
+        keys = new int[NMAX];
+        pq   = new int[NMAX];
+        qp   = new int[NMAX];
+        for (int i = 0; i < NMAX; i++) qp[i] = -1;
+    }
+
+    // largest index + 1 this queue can hold
+    public int capacity() { return qp.length; }
+
+    // is the priority queue empty?
+    public boolean isEmpty() { return N == 0; }
+
+    // is k an index on the priority queue?
+    public boolean contains(int k) {
+        return qp[k] != -1;
+    }
+
+    // number of keys in the priority queue
+    public int size() {
+        return N;
+    }
+
+    // remove all indices, touching only the slots in use
+    public void clear() {
+        for (int i = 0; i < N; i++) qp[pq[i]] = -1;
+        N = 0;
+    }
+
+    // associate key with index k
+    public void insert(int k, int key) {
+        if (contains(k)) throw new NoSuchElementException("item is already in pq");
+        qp[k] = N;
+        pq[N] = k;
+        keys[k] = key;
+        swim(N++);
+    }
+
+    // return the index associated with a minimal key
+    public int minIndex() {
+        if (N == 0) throw new NoSuchElementException("Priority queue underflow");
+        return pq[0];
+    }
+
+    // return a minimal key
+    public int minKey() {
+        if (N == 0) throw new NoSuchElementException("Priority queue underflow");
+        return keys[pq[0]];
+    }
+
+    // delete a minimal key and returns its associated index
+    public int delMin() {
+        if (N == 0) throw new NoSuchElementException("Priority queue underflow");
+        int min = pq[0];
+        exch(0, --N);
+        sink(0);
+        qp[min] = -1;            // delete
+        return min;
+    }
+
+    // return key associated with index k
+    public int keyOf(int k) {
+        if (!contains(k)) throw new NoSuchElementException("item is not in pq");
+        else return keys[k];
+    }
+
+    // change the key associated with index k
+    public void change(int k, int key) {
+        changeKey(k, key);
+    }
+
+    // change the key associated with index k
+    public void changeKey(int k, int key) {
+        if (!contains(k)) throw new NoSuchElementException("item is not in pq");
+        keys[k] = key;
+        swim(qp[k]);
+        sink(qp[k]);
+    }
+
+    // decrease the key associated with index k
+    public void decreaseKey(int k, int key) {
+        if (!contains(k)) throw new NoSuchElementException("item is not in pq");
+        if (keys[k] <= key) throw new RuntimeException("illegal decrease");
+        keys[k] = key;
+        swim(qp[k]);
+    }
+
+    // increase the key associated with index k
+    public void increaseKey(int k, int key) {
+        if (!contains(k)) throw new NoSuchElementException("item is not in pq");
+        if (keys[k] >= key) throw new RuntimeException("illegal increase");
+        keys[k] = key;
+        sink(qp[k]);
+    }
+
+    // delete the key associated with index k
+    public void delete(int k) {
+        if (!contains(k)) throw new NoSuchElementException("item is not in pq");
+        int index = qp[k];
+        exch(index, --N);
+        if (index < N) {
+            swim(index);
+            sink(index);
+        }
+        qp[k] = -1;
+    }
+
+
+   /**************************************************************
+    * General helper functions
+    **************************************************************/
+    private boolean greater(int i, int j) {
+        return keys[pq[i]] > keys[pq[j]];
+    }
+
+    private void exch(int i, int j) {
+        int swap = pq[i]; pq[i] = pq[j]; pq[j] = swap;
+        qp[pq[i]] = i; qp[pq[j]] = j;
+    }
+
+
+   /**************************************************************
+    * Heap helper functions
+    **************************************************************/
+    private void swim(int k)  {
+        while (k > 0 && greater((k-1)/D, k)) {
+            exch(k, (k-1)/D);
+            k = (k-1)/D;
+        }
+    }
+
+    private void sink(int k) {
+        while (D*k + 1 < N) {
+            int j = D*k + 1, last = Math.min(j + D, N);
+            for (int c = j + 1; c < last; c++)
+                if (greater(j, c)) j = c;
+            if (!greater(k, j)) break;
+            exch(k, j);
+            k = j;
+        }
+    }
+
+
+    // test method
+    public static void main(String[] args) {
+        int[] keys = { 9, 3, 7, 1, 8, 2, 6, 4, 5, 0 };
+
+        for (int arity = 2; arity <= 4; arity += 2) {
+            IndexMinIntPQ pq = new IndexMinIntPQ(keys.length, arity);
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < keys.length; i++) {
+                    pq.insert(i, keys[i]);
+                }
+                pq.decreaseKey(0, -1);
+                pq.delete(3);
+
+                // delete and print each key
+                System.out.print(arity + "-ary:");
+                while (!pq.isEmpty()) {
+                    int key = pq.minKey();
+                    System.out.print(" " + pq.delMin() + "=" + key);
+                }
+                System.out.println();
+                pq.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*************************************************************************
+ *  Compilation:  javac MappedTrainsGraph.java
+ *  Execution:    java MappedTrainsGraph [graph.snap]
+ *  Dependencies: TrainsGraph.java, TrainsSnapshotFile.java, TrainsCSR.java,
+ *                TrainsSP.java, TrainsBFS.java, TrainsDigraph.java,
+ *                DirectedEdge.java
+ *
+ *  A graph snapshot searched in place in its snapshot file (see
+ *  TrainsSnapshotFile). The eight adjacency arrays are never copied onto
+ *  the heap: each is a read-only memory mapping of its part of the file,
+ *  read through a little-endian IntBuffer view, so the operating system
+ *  pages the network in as searches touch it and drops it again under
+ *  memory pressure. This is how a network larger than the heap is
+ *  searched; only the station names and their index are kept on the heap.
+ *
+ *  A single mapping cannot exceed 2 GB, so an array is mapped as a row of
+ *  chunks of 2^28 ints, and int i lives at chunks[i >>> 28] offset
+ *  i & (2^28 - 1). Edge weights are looked up by scanning the edges out of
+ *  a vertex rather than through a hash index.
+ *
+ *  Obtain one with TrainsSnapshotFile.map(filename); the file must not be
+ *  changed while it is mapped.
+ *
+ *************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+public class MappedTrainsGraph extends TrainsGraph
+{
+    private static final int SHIFT = 28;                 // ints per chunk = 2^SHIFT
+    private static final int MASK = (1 << SHIFT) - 1;
+
+    private final String[] names;                        // index -> name
+    private final HashMap<String, Integer> index;        // name -> index
+    private final int V, E;
+    private final IntBuffer[] out_offset, out_from, out_to, out_weight;
+    private final IntBuffer[] in_offset, in_from, in_weight, in_edge;
+
+    /* map the arrays of a snapshot with the given stations and E edges,
+     * starting at byte pos of the file */
+    MappedTrainsGraph(String[] names, FileChannel channel, long pos, int E) throws IOException
+    {
+        this.names = names;
+        this.V = names.length;
+        this.E = E;
+        index = new HashMap<String, Integer>(2 * V);
+        for (int v = 0; v < V; v++) index.put(names[v], v);
+
+        out_offset = mapInts(channel, pos, V + 1); pos += 4L * (V + 1);
+        out_from = mapInts(channel, pos, E);       pos += 4L * E;
+        out_to = mapInts(channel, pos, E);         pos += 4L * E;
+        out_weight = mapInts(channel, pos, E);     pos += 4L * E;
+        in_offset = mapInts(channel, pos, V + 1);  pos += 4L * (V + 1);
+        in_from = mapInts(channel, pos, E);        pos += 4L * E;
+        in_weight = mapInts(channel, pos, E);      pos += 4L * E;
+        in_edge = mapInts(channel, pos, E);
+    }
+
+    /* map n ints starting at byte pos as a row of chunks */
+    static IntBuffer[] mapInts(FileChannel channel, long pos, int n) throws IOException
+    {
+        IntBuffer[] chunks = new IntBuffer[Math.max(1, (int) ((n + (long) MASK) >>> SHIFT))];
+        for (int c = 0; c < chunks.length; c++)
+        {
+            long first = (long) c << SHIFT;
+            long len = Math.min(n - first, 1L << SHIFT);
+            chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, pos + 4 * first, 4 * len)
+                               .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        return chunks;
+    }
+
+    /* int i of a mapped array */
+    private static int get(IntBuffer[] chunks, int i)
+    {
+        return chunks[i >>> SHIFT].get(i & MASK);
+    }
+
+    /* return the number of vertices */
+    public int V()
+    {
+        return V;
+    }
+
+    /* return the number of edges */
+    public int E()
+    {
+        return E;
+    }
+
+    /* return the id of the named vertex, or -1 if it is not in the graph */
+    public int indexOf(String v)
+    {
+        Integer i = index.get(v);
+        return i == null ? -1 : i;
+    }
+
+    /* return the name of vertex v */
+    public String nameOf(int v)
+    {
+        return names[v];
+    }
+
+    public int outBegin(int v)  { return get(out_offset, v);     }
+    public int outEnd(int v)    { return get(out_offset, v + 1); }
+    public int outFrom(int e)   { return get(out_from, e);       }
+    public int outTo(int e)     { return get(out_to, e);         }
+    public int outWeight(int e) { return get(out_weight, e);     }
+
+    public int inBegin(int v)   { return get(in_offset, v);      }
+    public int inEnd(int v)     { return get(in_offset, v + 1);  }
+    public int inFrom(int i)    { return get(in_from, i);        }
+    public int inWeight(int i)  { return get(in_weight, i);      }
+    public int inEdge(int i)    { return get(in_edge, i);        }
+
+    /**
+     * Test client.
+     */
+    public static void main(String[] args) throws IOException {
+        String filename = args.length > 0 ? args[0] : null;
+        if (filename == null) {
+            TrainsDigraph G = new TrainsDigraph(5);
+            String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+            for (String edge : edges) {
+                G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                           Integer.parseInt(edge.substring(2))));
+            }
+            File tmp = File.createTempFile("trains", ".snap");
+            tmp.deleteOnExit();
+            filename = tmp.getPath();
+            TrainsSnapshotFile.write(G.snapshot(), filename);
+        }
+        MappedTrainsGraph mapped = TrainsSnapshotFile.map(filename);
+        System.out.println(mapped.V() + " vertices, " + mapped.E() + " edges mapped from " + filename);
+        if (args.length == 0) {
+            // the sample is small enough to compare with a copy on the heap
+            TrainsCSR heap = TrainsSnapshotFile.read(filename);
+            System.out.println(heap.toString().equals(mapped.toString()) ? "same as read" : "DIFFERENT");
+        }
+
+        String s = mapped.nameOf(0), t = mapped.nameOf(mapped.V() - 1);
+        long start = System.nanoTime();
+        TrainsSP sp = new TrainsSP(mapped, s, t);
+        System.out.printf("%s to %s : %s, settled %d in %.3f s%n", s, t, sp.distTo(t),
+                          sp.getSettledCount(), (System.nanoTime() - start) / 1e9);
+        System.out.println("routes from " + t + " to " + t + " of at most 3 stops : "
+                           + new TrainsBFS(mapped, t, t, 6).routes().size());
+    }
+}
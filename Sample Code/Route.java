@@ -0,0 +1,87 @@
+/*************************************************************************
+ *  Compilation:  javac Route.java
+ *  Execution:    java Route
+ *  Dependencies: TrainsGraph.java
+ *
+ *  Immutable route through the graph: the sequence of stations visited,
+ *  their vertex ids in the snapshot the route was found in, and the total
+ *  distance travelled.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+
+public class Route
+{
+    private final String[] stations; // stations in order of travel
+    private final int[] vertices;    // ids of the stations in the snapshot
+    private final int distance;      // sum of the edge weights
+
+    /* create a route from the first length vertex ids of path */
+    public Route(TrainsGraph G, int[] path, int length, int distance)
+    {
+        vertices = Arrays.copyOf(path, length);
+        stations = new String[length];
+        for (int i = 0; i < length; i++)
+        {
+            stations[i] = G.nameOf(path[i]);
+        }
+        this.distance = distance;
+    }
+
+    /* return the station at position i of the route */
+    public String station(int i)
+    {  return stations[i];  }
+
+    /* return the vertex id of the station at position i */
+    public int vertex(int i)
+    {  return vertices[i];  }
+
+    /* return the number of stations on the route, ends included */
+    public int length()
+    {  return stations.length;  }
+
+    /* return the number of stops (edges) on the route */
+    public int hops()
+    {  return stations.length - 1;  }
+
+    /* return the total distance of the route */
+    public int distance()
+    {  return distance;  }
+
+    /* return the route in the same A-B-C form the client reads */
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < stations.length; i++)
+        {
+            if (i > 0) s.append('-');
+            s.append(stations[i]);
+        }
+        return s.toString();
+    }
+
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof Route)) return false;
+        Route that = (Route) other;
+        return distance == that.distance && Arrays.equals(stations, that.stations);
+    }
+
+    public int hashCode()
+    {
+        return 31 * Arrays.hashCode(stations) + distance;
+    }
+
+    /**
+     * Test client.
+     */
+    public static void main(String[] args) {
+        TrainsDigraph G = new TrainsDigraph(3);
+        G.addEdge(new DirectedEdge("A", "B", 5));
+        G.addEdge(new DirectedEdge("B", "C", 4));
+        TrainsCSR csr = G.snapshot();
+        Route r = new Route(csr, new int[] {0, 1, 2}, 3, 9);
+        System.out.println(r + " hops = " + r.hops() + " length = " + r.distance());
+    }
+}
@@ -0,0 +1,101 @@
+/*************************************************************************
+ *  Compilation:  javac RouteCondition.java
+ *  Dependencies: none
+ *
+ *  Stop condition of a route search, replacing the quizno switch inside
+ *  TrainsBFS. A search extends a partial route only while canExtend holds,
+ *  and reports a route that ends at the destination when accepts holds.
+ *  Both are given the number of stops and the distance of the route.
+ *
+ *  canFinish lets a search prune with TrainsBounds: given lower bounds on
+ *  the stops and distance of any completion of a partial route, it says
+ *  whether some completion could still be accepted. The conditions here
+ *  only get harder to meet as routes grow, so checking the bounds
+ *  themselves is enough; a condition that cannot tell returns true, which
+ *  only turns the pruning off.
+ *
+ *************************************************************************/
+
+public abstract class RouteCondition
+{
+    /* may a route with this many stops and this distance be extended? */
+    public abstract boolean canExtend(int hops, int dist);
+
+    /* is a route to the destination with these totals a match? */
+    public abstract boolean accepts(int hops, int dist);
+
+    /* could a route to the destination with at least min_hops stops and
+     * at least min_dist distance be a match? */
+    public boolean canFinish(int min_hops, int min_dist)
+    {
+        return true;
+    }
+
+    /* routes with between 1 and max_hops stops (question 6) */
+    public static RouteCondition atMostStops(final int max_hops)
+    {
+        return new RouteCondition() {
+            public boolean canExtend(int hops, int dist) { return hops < max_hops; }
+            public boolean accepts(int hops, int dist)   { return hops > 0 && hops <= max_hops; }
+            public boolean canFinish(int min_hops, int min_dist) { return min_hops <= max_hops; }
+            public String toString() { return "at most " + max_hops + " stops"; }
+        };
+    }
+
+    /* routes with exactly num_hops stops (question 7) */
+    public static RouteCondition exactlyStops(final int num_hops)
+    {
+        return new RouteCondition() {
+            public boolean canExtend(int hops, int dist) { return hops < num_hops; }
+            public boolean accepts(int hops, int dist)   { return hops > 0 && hops == num_hops; }
+            public boolean canFinish(int min_hops, int min_dist) { return min_hops <= num_hops; }
+            public String toString() { return "exactly " + num_hops + " stops"; }
+        };
+    }
+
+    /* routes of at least one stop shorter than max_dist (question 10) */
+    public static RouteCondition shorterThan(final int max_dist)
+    {
+        return new RouteCondition() {
+            public boolean canExtend(int hops, int dist) { return dist < max_dist; }
+            public boolean accepts(int hops, int dist)   { return hops > 0 && dist < max_dist; }
+            public boolean canFinish(int min_hops, int min_dist) { return min_dist < max_dist; }
+            public String toString() { return "distance less than " + max_dist; }
+        };
+    }
+
+    /* routes that satisfy both conditions */
+    public static RouteCondition both(final RouteCondition a, final RouteCondition b)
+    {
+        return new RouteCondition() {
+            public boolean canExtend(int hops, int dist) {
+                return a.canExtend(hops, dist) && b.canExtend(hops, dist);
+            }
+            public boolean accepts(int hops, int dist) {
+                return a.accepts(hops, dist) && b.accepts(hops, dist);
+            }
+            public boolean canFinish(int min_hops, int min_dist) {
+                return a.canFinish(min_hops, min_dist) && b.canFinish(min_hops, min_dist);
+            }
+            public String toString() { return a + " and " + b; }
+        };
+    }
+
+    /* the condition TrainsBFS uses for a question number */
+    public static RouteCondition forQuestion(int quizno, int max_dist)
+    {
+        switch (quizno)
+        {
+            case 6:  return atMostStops(TrainsBFS.MAX_STOPS);
+            case 7:  return exactlyStops(TrainsBFS.EXACT_STOPS);
+            case 10: return shorterThan(max_dist);
+            default: throw new IllegalArgumentException("no route condition for question " + quizno);
+        }
+    }
+
+    /* the condition for a question number, with the default distance bound */
+    public static RouteCondition forQuestion(int quizno)
+    {
+        return forQuestion(quizno, TrainsBFS.MAX_DIST);
+    }
+}
@@ -0,0 +1,243 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsAllPairs.java
+ *  Execution:    java TrainsAllPairs
+ *  Dependencies: TrainsDigraph.java, TrainsGraph.java, TrainsSP.java
+ *                IndexMinIntPQ.java, DirectedEdge.java
+ *
+ *  All-pairs shortest distance and next-hop table. One Dijkstra is run per
+ *  source, with the sources split across a ForkJoinPool, and every (s, t)
+ *  lookup afterwards is a single array access. The diagonal holds the
+ *  length of the shortest round trip through each vertex (questions 8 and
+ *  9), and full paths are rebuilt by following the next-hop edges. The
+ *  table uses O(V^2) memory, so V is limited to MAX_VERTICES. The row
+ *  searches are not recorded in TrainsMetrics as shortest path queries.
+ *  The table remembers the version of the graph it was built from, so
+ *  callers can tell when addEdge has made it stale and rebuild it, in the
+ *  background if they like.
+ *
+ *************************************************************************/
+
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class TrainsAllPairs {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private static final int ROWS_PER_TASK = 8; // sources handled by one leaf task
+    public static final int MAX_VERTICES = 46340; // largest V with V*V < 2^31
+    private final TrainsGraph G;
+    private final TrainsDigraph graph;  // graph the snapshot came from, null if none
+    private final ForkJoinPool pool;
+    private final long version;         // version of graph when the snapshot was taken
+    private final int num_vertices;
+    private final int[] dist;           // dist[s*V + t] = shortest distance from s to t
+    private final int[] next;           // next[s*V + t] = first edge on that path, -1 if none
+
+    /* build the table for the current state of G on the common pool */
+    public TrainsAllPairs(TrainsDigraph G) {
+        this(G, ForkJoinPool.commonPool());
+    }
+
+    /* build the table for the current state of G on the given pool */
+    public TrainsAllPairs(TrainsDigraph G, ForkJoinPool pool) {
+        this(G.snapshot(), G, G.getVersion(), pool);
+    }
+
+    /* build the table for a frozen snapshot; it never goes stale */
+    public TrainsAllPairs(TrainsGraph G, ForkJoinPool pool) {
+        this(G, null, 0, pool);
+    }
+
+    private TrainsAllPairs(TrainsGraph G, TrainsDigraph graph, long version, ForkJoinPool pool) {
+        this.G = G;
+        this.graph = graph;
+        this.version = version;
+        this.pool = pool;
+        num_vertices = G.V();
+        if (num_vertices > MAX_VERTICES)
+            throw new IllegalArgumentException("too many vertices for an all-pairs table: "
+                                               + num_vertices + " > " + MAX_VERTICES);
+        dist = new int[num_vertices * num_vertices];
+        next = new int[num_vertices * num_vertices];
+        pool.invoke(new RowTask(0, num_vertices));
+    }
+
+    /* computes the rows of sources lo..hi-1, splitting large ranges */
+    private class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int lo, hi;
+
+        RowTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo > ROWS_PER_TASK)
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new RowTask(lo, mid), new RowTask(mid, hi));
+                return;
+            }
+            TrainsSP.Workspace ws = new TrainsSP.Workspace(num_vertices); // shared by the rows below
+            for (int s = lo; s < hi; s++)
+            {
+                fillRow(s, TrainsSP.unrecordedTree(G, G.nameOf(s), ws));
+            }
+        }
+    }
+
+    /* copy the shortest path tree from s into row s of the table */
+    private void fillRow(int s, TrainsSP sp) {
+        int row = s * num_vertices;
+        for (int t = 0; t < num_vertices; t++)
+        {
+            dist[row + t] = sp.distTo(t);
+            next[row + t] = -2; // not resolved yet
+        }
+        next[row + s] = -1;
+
+        // the first edge towards t is the first edge towards t's parent
+        int[] stack = new int[num_vertices];
+        for (int t = 0; t < num_vertices; t++)
+        {
+            int depth = 0, x = t;
+            while (next[row + x] == -2)
+            {
+                int e = sp.edgeTo(x);
+                if (e == -1)
+                {
+                    next[row + x] = -1; // unreachable
+                    break;
+                }
+                int u = G.outFrom(e);
+                if (u == s)
+                {
+                    next[row + x] = e;
+                    break;
+                }
+                stack[depth++] = x;
+                x = u;
+            }
+            while (depth > 0)
+            {
+                int y = stack[--depth];
+                next[row + y] = next[row + G.outFrom(sp.edgeTo(y))];
+            }
+        }
+
+        // shortest round trip: the best edge u->s back into the source
+        dist[row + s] = INFINITY;
+        for (int i = G.inBegin(s); i < G.inEnd(s); i++)
+        {
+            int u = G.inFrom(i);
+            if (!sp.hasPathTo(u)) continue;
+            int d = sp.distTo(u) + G.inWeight(i);
+            if (d < dist[row + s])
+            {
+                dist[row + s] = d;
+                next[row + s] = (u == s) ? G.inEdge(i) : next[row + u];
+            }
+        }
+    }
+
+    /* return the id of vertex V, rejecting unknown vertices */
+    private int index(String V) {
+        int v = G.indexOf(V);
+        if (v < 0) throw new IllegalArgumentException("no such vertex: " + V);
+        return v;
+    }
+
+    /* shortest distance from s to t; the shortest round trip when s == t */
+    public int distance(int s, int t) {
+        return dist[s * num_vertices + t];
+    }
+
+    /* shortest distance between the named vertices */
+    public int distance(String s, String t) {
+        return distance(index(s), index(t));
+    }
+
+    /* is there a path from s to t (a round trip when s == t)? */
+    public boolean hasPath(String s, String t) {
+        return distance(s, t) < INFINITY;
+    }
+
+    /* first edge (index into the snapshot) on the path from s to t, -1 if none */
+    public int nextEdge(int s, int t) {
+        return next[s * num_vertices + t];
+    }
+
+    /* shortest path from s to t as an Iterable, null if no such path */
+    public Iterable<DirectedEdge> path(String S, String T) {
+        int s = index(S), t = index(T);
+        if (distance(s, t) == INFINITY) return null;
+        LinkedList<DirectedEdge> path = new LinkedList<DirectedEdge>();
+        int e = nextEdge(s, t);
+        while (true)
+        {
+            path.add(G.edge(e));
+            int x = G.outTo(e);
+            if (x == t) break;
+            e = nextEdge(x, t);
+        }
+        return path;
+    }
+
+    /* the snapshot this table was computed from */
+    public TrainsGraph snapshot() {
+        return G;
+    }
+
+    /* has the graph changed since this table was built? */
+    public boolean isStale() {
+        return graph != null && graph.getVersion() != version;
+    }
+
+    /* return this table if it is current, or a new one for the current graph */
+    public TrainsAllPairs refresh() {
+        if (!isStale()) return this;
+        return new TrainsAllPairs(graph, pool);
+    }
+
+    /* rebuild the table on the pool if it is stale; the graph is read on the
+     * calling thread, so the rebuild never races with later addEdge calls */
+    public CompletableFuture<TrainsAllPairs> refreshAsync() {
+        if (!isStale()) return CompletableFuture.completedFuture(this);
+        final TrainsCSR csr = graph.snapshot();
+        final long v = graph.getVersion();
+        return CompletableFuture.supplyAsync(() -> new TrainsAllPairs(csr, graph, v, pool), pool);
+    }
+
+    // test method
+    public static void main(String[] args) throws Exception {
+
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+
+        TrainsAllPairs table = new TrainsAllPairs(G);
+        for (String[] q : new String[][] { {"A", "C"}, {"B", "B"}, {"C", "C"}, {"E", "A"} }) {
+            System.out.print(q[0] + " to " + q[1] + " : ");
+            if (table.hasPath(q[0], q[1])) {
+                System.out.println(table.path(q[0], q[1]) + "; length = "
+                                   + table.distance(q[0], q[1]));
+            }
+            else {
+                System.out.println("NO SUCH ROUTE");
+            }
+        }
+
+        // a new edge makes the table stale until it is rebuilt
+        G.addEdge(new DirectedEdge("A", "C", 2));
+        System.out.println("stale after addEdge: " + table.isStale());
+        table = table.refreshAsync().get();
+        System.out.println("A to C : " + table.path("A", "C") + "; length = "
+                           + table.distance("A", "C") + ", stale: " + table.isStale());
+    }
+}
@@ -3,100 +3,249 @@
  *  Date: 07/08/2012
  *  Compilation:  javac TrainsBFS.java
  *  Execution:    java TrainsBFS
- *  Dependencies: TrainsDigraph.java, DirectedEdge.java
+ *  Dependencies: TrainsDigraph.java, TrainsGraph.java, DirectedEdge.java,
+ *                RouteCondition.java, TrainsBounds.java, Route.java,
+ *                TrainsMetrics.java
  *
  *  Finds paths between two vertices, the source and destination. Implements
  *  the breadth-first algorithm, modified to handle different conditions
- *  depending on the problem presented
+ *  depending on the problem presented. Only the number of matching routes
+ *  is kept; use TrainsRoutes to consume the routes themselves. The search
+ *  counts the partial paths it enqueues, the peak size of its frontier and
+ *  the paths it stops extending, and records them in TrainsMetrics.
+ *
+ *  Each partial route on the queue is one slot of four parallel int arrays:
+ *  its last vertex, the slot of the route it extends, its number of hops
+ *  and its distance so far. Extending a route is O(1) and makes no
+ *  objects; station names may be of any length, and a route is only spelt
+ *  out (by following the parent slots) when routes() is asked for it.
+ *  Extensions that the stop condition would discard are not enqueued, and
+ *  with TrainsBounds for the destination neither are those that could no
+ *  longer reach it within the condition. Each slot counts the queued
+ *  extensions and matched routes that still lead back through it; once
+ *  a dequeued route has none it is put on a free list for reuse, so the
+ *  slots in use follow the frontier and the counted routes rather than
+ *  every route ever enqueued.
  *************************************************************************/
 
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.LinkedList;
 
 public class TrainsBFS {
     
-    private int num_vertices; // number of vertices in the graph
-    private int hop_count; // number of hops (or stops) in a path
     private int trip_count; // number of trips between to vertices
-    private static final int MAX_DIST = 30; // maximum distance for question 10
-    private String source, dest; // source and destination vertices to execute BFS
-    int quizno; // number of the problem/question
+    public static final int MAX_DIST = 30; // default maximum distance for question 10
+    public static final int MAX_STOPS = 3; // maximum number of stops for question 6
+    public static final int EXACT_STOPS = 4; // exact number of stops for question 7
+    private String dest; // destination of the routes counted
+    int quizno; // number of the problem/question, 0 for a given condition
+    private RouteCondition condition; // when to extend and when to count a route
+    private TrainsBounds bounds; // lower bounds to dest, null for no pruning
+    private TrainsGraph G; // snapshot searched
+    
+    private static final int MAX_SLOTS = Integer.MAX_VALUE - 8; // largest array size
+    
+    /* the partial routes; slot i holds the route that ends at vertex[i],
+     * extends the route in slot parent[i] (-1 for the source), has hops[i]
+     * stops and distance dist[i], and is held by refs[i] extensions and
+     * matches; a free slot links to the next free slot through parent[i] */
+    private int[] vertex = new int[64], parent = new int[64];
+    private int[] hops = new int[64], dist = new int[64], refs = new int[64];
+    private int num_slots, free; // slots ever used, first free slot or -1
+    private int[] queue = new int[64]; // ring of the slots waiting to be extended
+    private int queue_head, queue_size;
+    private int[] matches = new int[16]; // slots of the routes that were counted
+    
+    private int enqueued, peak_frontier, pruned; // search counters
+    private long elapsed_nanos; // wall time of the search
     
     // execute exhaustive search from a single source
     public TrainsBFS(TrainsDigraph G, String source, String dest, int quizno) {
-        num_vertices = G.getNumVertices();
-        this.source = source;
-        this.dest = dest;
+        this(G.snapshot(), source, dest, quizno, MAX_DIST);
+    }
+    
+    // execute exhaustive search with the given distance bound for question 10
+    public TrainsBFS(TrainsDigraph G, String source, String dest, int quizno, int max_dist) {
+        this(G.snapshot(), source, dest, quizno, max_dist);
+    }
+    
+    // execute exhaustive search from a single source over a frozen snapshot
+    public TrainsBFS(TrainsGraph G, String source, String dest, int quizno) {
+        this(G, source, dest, quizno, MAX_DIST);
+    }
+    
+    // execute exhaustive search over a frozen snapshot with a distance bound
+    public TrainsBFS(TrainsGraph G, String source, String dest, int quizno, int max_dist) {
+        this(G, source, dest, RouteCondition.forQuestion(quizno, max_dist));
         this.quizno = quizno;
-        
-        // queue of paths that have been traversed so far
-        LinkedList<String> paths = new LinkedList<String>();
-        paths.add(source);
-        trainsbfs(G, paths);
+    }
+    
+    // execute exhaustive search over a frozen snapshot under any condition
+    public TrainsBFS(TrainsGraph G, String source, String dest, RouteCondition condition) {
+        this(G, source, dest, condition, null);
+    }
+    
+    // execute exhaustive search pruned with bounds computed for dest
+    public TrainsBFS(TrainsGraph G, String source, String dest, RouteCondition condition,
+                     TrainsBounds bounds) {
+        if (bounds != null) TrainsRoutes.check(G, dest, bounds);
+        this.bounds = bounds;
+        this.G = G;
+        this.dest = dest;
+        this.condition = condition;
+        trainsbfs(G, source);
     }
     
     // BFS from single source    
-    public void trainsbfs(TrainsDigraph G, LinkedList<String> paths)
+    public void trainsbfs(TrainsDigraph G, String source)
+    {
+        trainsbfs(G.snapshot(), source);
+    }
+    
+    // BFS from single source over a frozen snapshot
+    public void trainsbfs(TrainsGraph G, String source)
     {        
-        int path_dist = 0; // length of the current path
-        String curr_path = null; // sequence of vertices in the current path
+        long start = System.nanoTime();
+        int src = G.indexOf(source);
+        if (src < 0) throw new IllegalArgumentException("no such vertex: " + source);
+        int dst = G.indexOf(dest); // -1 if dest is not in the graph: no trips
+        
+        num_slots = 0;
+        free = -1;
+        queue_head = queue_size = 0;
+        enqueue(push(src, -1, 0, 0));
+        enqueued++;
+        peak_frontier = Math.max(peak_frontier, 1);
         
-        while (paths.size() > 0)
+        while (queue_size > 0)
         {
-            curr_path = paths.remove(); // dequeue the current path 
-            String [] tmp_array = curr_path.split(""); // convert to an array
-            String [] curr_path_array = new String[tmp_array.length-1];
-            boolean exit_condition = false, print_condition = false;
-            int curr_path_len = curr_path_array.length;
+            int slot = dequeue(); // the current route
+            int curr_vertex = vertex[slot], curr_hops = hops[slot], curr_dist = dist[slot];
             
-            // safe copy all elements
-            for (int i = 0; i < curr_path_len; i++)
+            if (curr_vertex == dst && condition.accepts(curr_hops, curr_dist))
             {
-                curr_path_array[i] = tmp_array[i+1];
+                if (trip_count == matches.length) matches = Arrays.copyOf(matches, grow(trip_count));
+                matches[trip_count++] = slot;
+                refs[slot]++; // keep the route for routes()
             }
             
-            // the least recently inserted vertex
-            String curr_vertex = curr_path_array[curr_path_len-1]; 
-            LinkedList<String> adjvertices = G.adjVertices(curr_vertex);            
-            path_dist = G.findDistance(curr_path_array);   
-            
-            // switch BFS stop conditions depending on the problem being solved
-            if (quizno == 6)
+            if (condition.canExtend(curr_hops, curr_dist))
             {
-                hop_count = 3;
-                exit_condition = curr_path_len > hop_count + 1; /* hop_count + 1 
-                 * (the number of hops includes the final vertex)*/
-                print_condition = (curr_path_len <= 4) && (curr_path_len > 1);
-            }
-            else if (quizno == 7)
-            {
-                hop_count = 4;
-                exit_condition = curr_path_len > hop_count + 1;
-                print_condition = curr_path_len == 5; /* hop_count + 1 
-                 * (the number of hops includes the final vertex)*/
+                // enqueue the extensions of the current route that can still
+                // be counted or extended
+                for (int e = G.outBegin(curr_vertex); e < G.outEnd(curr_vertex); e++)
+                { 
+                    int w = G.outTo(e), d = curr_dist + G.outWeight(e), h = curr_hops + 1;
+                    boolean viable = bounds == null || bounds.canFinish(condition, w, h, d);
+                    if (viable && (condition.canExtend(h, d) || (w == dst && condition.accepts(h, d))))
+                    {
+                        enqueue(push(w, slot, h, d));
+                        enqueued++;
+                    }
+                    else
+                    {
+                        pruned++;
+                    }
+                }
+                peak_frontier = Math.max(peak_frontier, queue_size);
             }
-            else if (quizno == 10)
+            release(slot);
+        }
+        elapsed_nanos = System.nanoTime() - start;
+        TrainsMetrics.BFS.record(elapsed_nanos, enqueued, peak_frontier, pruned);
+    }
+    
+    /* store a route in a free slot, or a new one, and return its slot */
+    private int push(int v, int from_slot, int h, int d)
+    {
+        int slot = free;
+        if (slot >= 0)
+        {
+            free = parent[slot];
+        }
+        else
+        {
+            if (num_slots == vertex.length)
             {
-                exit_condition = path_dist >= MAX_DIST;
-                print_condition = (path_dist < MAX_DIST) && (curr_path_len > 1);
+                int n = grow(num_slots);
+                vertex = Arrays.copyOf(vertex, n);
+                parent = Arrays.copyOf(parent, n);
+                hops = Arrays.copyOf(hops, n);
+                dist = Arrays.copyOf(dist, n);
+                refs = Arrays.copyOf(refs, n);
             }
-            
-            if (curr_vertex.equals(dest) && print_condition)
-            {
-                System.out.println("path " +trip_count+ ": "+curr_path);
-                trip_count++;
-            }            
-            
-            if (!exit_condition)
+            slot = num_slots++;
+        }
+        vertex[slot] = v;
+        parent[slot] = from_slot;
+        hops[slot] = h;
+        dist[slot] = d;
+        refs[slot] = 0;
+        if (from_slot >= 0) refs[from_slot]++;
+        return slot;
+    }
+    
+    /* free a dequeued route that nothing holds any more, and then each of
+     * the routes it extends that this leaves unheld */
+    private void release(int slot)
+    {
+        while (slot >= 0 && refs[slot] == 0)
+        {
+            int from_slot = parent[slot];
+            parent[slot] = free;
+            free = slot;
+            if (from_slot >= 0) refs[from_slot]--;
+            slot = from_slot;
+        }
+    }
+    
+    /* add a slot to the back of the queue */
+    private void enqueue(int slot)
+    {
+        if (queue_size == queue.length)
+        {
+            int[] next = new int[grow(queue_size)];
+            for (int i = 0; i < queue_size; i++) next[i] = queue[(queue_head + i) % queue_size];
+            queue = next;
+            queue_head = 0;
+        }
+        queue[(queue_head + queue_size++) % queue.length] = slot;
+    }
+    
+    /* remove and return the slot at the front of the queue */
+    private int dequeue()
+    {
+        int slot = queue[queue_head];
+        queue_head = (queue_head + 1) % queue.length;
+        queue_size--;
+        return slot;
+    }
+    
+    /* the capacity to grow an array of n slots to; a search that would
+     * need more slots than an array can hold is abandoned */
+    private static int grow(int n)
+    {
+        if (n >= MAX_SLOTS) throw new IllegalStateException("too many partial routes: " + n);
+        return (int) Math.min(2L * n, MAX_SLOTS);
+    }
+    
+    // the routes that were counted, in the order they were found
+    public List<Route> routes()
+    {
+        List<Route> routes = new ArrayList<Route>(trip_count);
+        for (int m = 0; m < trip_count; m++)
+        {
+            int slot = matches[m];
+            int[] path = new int[hops[slot] + 1];
+            for (int i = path.length - 1, s = slot; i >= 0; i--, s = parent[s])
             {
-                // examine neighbours of current vertex        
-                for (String nextvertex : adjvertices)
-                { 
-                    // enqueue examined neighbours of the current vertex
-                    paths.add(curr_path + nextvertex); 
-                }                
+                path[i] = vertex[s];
             }
+            routes.add(new Route(G, path, path.length, dist[slot]));
         }
+        return routes;
     }
     
     public int getTripCount()
@@ -104,6 +253,31 @@ public class TrainsBFS {
         return trip_count;
     }
     
+    // number of partial paths put on the queue
+    public int getEnqueuedCount()
+    {
+        return enqueued;
+    }
+    
+    // largest number of partial paths on the queue at once
+    public int getPeakFrontier()
+    {
+        return peak_frontier;
+    }
+    
+    // number of extensions not enqueued, because the stop condition would
+    // discard them or the lower bounds show they can no longer reach dest
+    public int getPrunedCount()
+    {
+        return pruned;
+    }
+    
+    // wall time of the search in nanoseconds
+    public long getElapsedNanos()
+    {
+        return elapsed_nanos;
+    }
+    
     private void printPath(LinkedList<String> visited, int path_length) {      
             for (String vertex : visited) {
                 System.out.print(vertex);
@@ -130,6 +304,12 @@ public class TrainsBFS {
 
         // print routes between source and destination        
         System.out.print("Number of routes between " +src+ " and " +dst);
-        System.out.println(" = " +bfs.getTripCount());
+        System.out.println(" = " +bfs.getTripCount() + " " + bfs.routes());
+        
+        // station names of any length
+        G.addEdge(new DirectedEdge("Paris","Lyon",465));
+        G.addEdge(new DirectedEdge("Lyon","C",2));
+        bfs = new TrainsBFS(G.snapshot(), "Paris", "A", RouteCondition.shorterThan(480));
+        System.out.println("Routes from Paris to A under 480 = " + bfs.routes());
     }
 }
@@ -0,0 +1,206 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsBatch.java
+ *  Execution:    java TrainsBatch
+ *  Dependencies: TrainsGraph.java, TrainsQuery.java, TrainsSP.java
+ *                TrainsTripCounter.java, TrainsDistanceCounter.java
+ *                TrainsRoutes.java, RouteCondition.java, IndexMinIntPQ.java
+ *
+ *  Answers a batch of trains queries against one loaded graph. Queries
+ *  are grouped by origin so that one computation per origin answers every
+ *  destination asked about: a single shortest path tree (plus one round
+ *  trip search if asked) for questions 8 and 9, a single trip counter
+ *  recording the stop counts asked for questions 6 and 7, and for question 10
+ *  route enumeration while it is cheap, then a single distance counter
+ *  per bound. Answers come back in input order.
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TrainsBatch {
+
+    private final TrainsGraph G;
+    private final TrainsSP.Workspace tree_space, cycle_space; // reused by every shortest path search
+
+    /* prepare to answer queries against G */
+    public TrainsBatch(TrainsGraph G) {
+        this.G = G;
+        tree_space = new TrainsSP.Workspace(G.V());
+        cycle_space = new TrainsSP.Workspace(G.V());
+    }
+
+    /* answer every query, returning the answers in the order given */
+    public String[] run(List<TrainsQuery> queries) {
+        String[] answers = new String[queries.size()];
+        Map<String, List<Integer>> shortest = new LinkedHashMap<String, List<Integer>>();
+        Map<String, List<Integer>> trips = new LinkedHashMap<String, List<Integer>>();
+        Map<String, List<Integer>> bounded = new LinkedHashMap<String, List<Integer>>();
+        List<Integer> routes = new ArrayList<Integer>();
+
+        // answer route distances at once, group everything else by origin
+        for (int i = 0; i < answers.length; i++)
+        {
+            TrainsQuery q = queries.get(i);
+            switch (q.quizno())
+            {
+                case 6:
+                case 7:  group(trips, q.source(), i);    break;
+                case 8:
+                case 9:  group(shortest, q.source(), i); break;
+                case 10: group(bounded, q.source() + " " + q.limit(), i); break;
+                default: routes.add(i);
+            }
+        }
+
+        String[] paths = new String[routes.size()];
+        for (int k = 0; k < paths.length; k++) paths[k] = queries.get(routes.get(k)).path();
+        int[] dist = G.findDistances(paths);
+        for (int k = 0; k < paths.length; k++)
+            answers[routes.get(k)] = TrainsQuery.formatDistance(dist[k]);
+
+        for (List<Integer> group : shortest.values())
+        {
+            try {
+                answerShortest(queries, group, answers);
+            }
+            catch (IllegalArgumentException e) {
+                fail(group, answers, e);
+            }
+        }
+        for (List<Integer> group : trips.values())
+        {
+            try {
+                answerTrips(queries, group, answers);
+            }
+            catch (IllegalArgumentException e) {
+                fail(group, answers, e);
+            }
+        }
+        for (List<Integer> group : bounded.values())
+        {
+            try {
+                answerBounded(queries, group, answers);
+            }
+            catch (IllegalArgumentException e) {
+                fail(group, answers, e);
+            }
+        }
+        return answers;
+    }
+
+    /* add query i to the group of the given key */
+    private static void group(Map<String, List<Integer>> groups, String key, int i) {
+        List<Integer> group = groups.get(key);
+        if (group == null)
+        {
+            group = new ArrayList<Integer>();
+            groups.put(key, group);
+        }
+        group.add(i);
+    }
+
+    /* report the same error for a whole group whose computation failed */
+    private static void fail(List<Integer> group, String[] answers, RuntimeException e) {
+        for (int i : group) answers[i] = "ERROR: " + e.getMessage();
+    }
+
+    /* questions 8 and 9 from one origin */
+    private void answerShortest(List<TrainsQuery> queries, List<Integer> group, String[] answers) {
+        String source = queries.get(group.get(0)).source();
+        TrainsSP tree = null, round_trip = null;
+        for (int i : group)
+        {
+            String dest = queries.get(i).dest();
+            try {
+                if (dest.equals(source))
+                {
+                    if (round_trip == null) round_trip = new TrainsSP(G, source, source, cycle_space);
+                    answers[i] = TrainsQuery.formatShortest(round_trip, dest);
+                }
+                else
+                {
+                    if (tree == null) tree = TrainsSP.tree(G, source, tree_space);
+                    answers[i] = TrainsQuery.formatShortest(tree, dest);
+                }
+            }
+            catch (IllegalArgumentException e) {
+                answers[i] = "ERROR: " + e.getMessage();
+            }
+        }
+    }
+
+    /* questions 6 and 7 from one origin */
+    private void answerTrips(List<TrainsQuery> queries, List<Integer> group, String[] answers) {
+        int[] hops = new int[group.size()];
+        for (int k = 0; k < hops.length; k++) hops[k] = queries.get(group.get(k)).limit();
+        TrainsTripCounter counter = new TrainsTripCounter(G, queries.get(group.get(0)).source(), hops);
+        for (int i : group)
+        {
+            TrainsQuery q = queries.get(i);
+            try {
+                long count = q.quizno() == 6 ? counter.countAtMost(q.dest(), q.limit())
+                                             : counter.countExactly(q.dest(), q.limit());
+                answers[i] = Long.toString(count);
+            }
+            catch (RuntimeException e) {
+                answers[i] = "ERROR: " + e.getMessage();
+            }
+        }
+    }
+
+    /* question 10 from one origin with one distance bound: the routes are
+     * enumerated while the group's enumeration budget lasts (see
+     * TrainsQuery.countShorterThan), then one distance counter answers the
+     * rest of the group */
+    private void answerBounded(List<TrainsQuery> queries, List<Integer> group, String[] answers) {
+        TrainsQuery first = queries.get(group.get(0));
+        long budget = TrainsQuery.enumerationBudget(G, first.limit());
+        TrainsDistanceCounter counter = null;
+        for (int i : group)
+        {
+            TrainsQuery q = queries.get(i);
+            try {
+                long count = -1;
+                if (counter == null && budget > 0)
+                {
+                    TrainsRoutes routes = new TrainsRoutes(G, q.source(), q.dest(),
+                                                           RouteCondition.shorterThan(q.limit()));
+                    count = routes.countRemaining(budget);
+                    budget -= routes.steps();
+                }
+                if (count < 0)
+                {
+                    if (counter == null) counter = new TrainsDistanceCounter(G, first.source(), first.limit());
+                    count = counter.countTo(q.dest());
+                }
+                answers[i] = Long.toString(count);
+            }
+            catch (RuntimeException e) {
+                answers[i] = "ERROR: " + e.getMessage();
+            }
+        }
+    }
+
+    // test method
+    public static void main(String[] args) {
+
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+
+        String[] lines = { "1 A-B-C", "2 A-D", "3 A-D-C", "4 A-E-B-C-D", "5 A-E-D",
+                           "6 C C", "7 A C", "8 A C", "9 B B", "10 C C", "8 A E", "8 A Z" };
+        List<TrainsQuery> queries = new ArrayList<TrainsQuery>();
+        for (String line : lines) queries.add(TrainsQuery.parse(line));
+        String[] answers = new TrainsBatch(G.snapshot()).run(queries);
+        for (int i = 0; i < answers.length; i++) {
+            System.out.println(queries.get(i) + " : " + answers[i]);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsBenchmark.java
+ *  Execution:    java TrainsBenchmark [-v V] [-d degree] [-w min:max]
+ *                                     [-powerlaw] [-seed n] [-warmup rounds]
+ *                                     [-rounds rounds] [-time ms] [name ...]
+ *  Dependencies: TrainsNetworkGenerator.java, TrainsDigraph.java,
+ *                TrainsCSR.java, TrainsSP.java, TrainsBFS.java,
+ *                TrainsRoutes.java, TrainsTripCounter.java,
+ *                TrainsDistanceCounter.java, IndexMinIntPQ.java,
+ *                TrainsP2P.java, TrainsLandmarks.java
+ *
+ *  Benchmark suite for the trains engines on generated networks. Each
+ *  benchmark is run for a number of timed warmup rounds, then for the
+ *  measured rounds, and reports the mean time per operation with its
+ *  spread, the operations per second, the bytes allocated per operation
+ *  (from the thread allocation counter the JMH GC profiler also reads)
+ *  and the collections that ran while it was measured. Pass benchmark
+ *  names to run only those.
+ *
+ *************************************************************************/
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TrainsBenchmark {
+
+    /* one benchmarked operation; op(i) runs the i-th query */
+    private static abstract class Bench {
+        final String name;
+        Bench(String name) { this.name = name; }
+        abstract long op(int i);
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink; // consumes results so no work is optimized away
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += Math.max(0, gc.getCollectionCount());
+        return n;
+    }
+
+    private static long gcMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += Math.max(0, gc.getCollectionTime());
+        return n;
+    }
+
+    /* run b for one round of at least millis; returns {ops, nanos, bytes} */
+    private static long[] round(Bench b, long millis, int first) {
+        long tid = Thread.currentThread().getId();
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long bytes = THREADS.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime(), now = start;
+        int ops = 0;
+        while (now < deadline)
+        {
+            for (int k = 0; k < 16; k++) sink += b.op(first + ops++);
+            now = System.nanoTime();
+        }
+        return new long[] { ops, now - start, THREADS.getThreadAllocatedBytes(tid) - bytes };
+    }
+
+    private static void run(Bench b, int warmup, int rounds, long millis) {
+        int next = 0;
+        for (int r = 0; r < warmup; r++) next += (int) round(b, millis, next)[0];
+
+        double[] ns_per_op = new double[rounds];
+        long total_ops = 0, total_ns = 0, total_bytes = 0;
+        long gcs = gcCount(), gc_ms = gcMillis();
+        for (int r = 0; r < rounds; r++)
+        {
+            long[] m = round(b, millis, next);
+            next += (int) m[0];
+            ns_per_op[r] = (double) m[1] / m[0];
+            total_ops += m[0];
+            total_ns += m[1];
+            total_bytes += m[2];
+        }
+        double mean = (double) total_ns / total_ops, var = 0;
+        for (double x : ns_per_op) var += (x - mean) * (x - mean);
+        double stdev = rounds > 1 ? Math.sqrt(var / (rounds - 1)) : 0;
+        System.out.printf("%-16s %12.1f ns/op  +- %8.1f  %12.0f ops/s  %10.1f B/op  %4d GCs (%d ms)%n",
+                          b.name, mean, stdev, 1e9 / mean, (double) total_bytes / total_ops,
+                          gcCount() - gcs, gcMillis() - gc_ms);
+    }
+
+    public static void main(String[] args) {
+        int V = 1000, min_weight = 1, max_weight = 10, warmup = 3, rounds = 5;
+        double degree = 3;
+        boolean power_law = false;
+        long seed = 1, millis = 1000;
+        List<String> selected = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++)
+        {
+            String a = args[i];
+            if (a.equals("-v"))             V = Integer.parseInt(args[++i]);
+            else if (a.equals("-d"))        degree = Double.parseDouble(args[++i]);
+            else if (a.equals("-w"))
+            {
+                String[] range = args[++i].split(":");
+                min_weight = Integer.parseInt(range[0]);
+                max_weight = Integer.parseInt(range[1]);
+            }
+            else if (a.equals("-powerlaw")) power_law = true;
+            else if (a.equals("-seed"))     seed = Long.parseLong(args[++i]);
+            else if (a.equals("-warmup"))   warmup = Integer.parseInt(args[++i]);
+            else if (a.equals("-rounds"))   rounds = Integer.parseInt(args[++i]);
+            else if (a.equals("-time"))     millis = Long.parseLong(args[++i]);
+            else                            selected.add(a);
+        }
+
+        final TrainsDigraph G = new TrainsNetworkGenerator(V, degree, min_weight, max_weight,
+                                                           power_law, seed).generate();
+        final TrainsCSR csr = G.snapshot();
+        System.out.printf("network: %d stations, %d edges, %s degree %.1f, weights %d..%d%n",
+                          csr.V(), csr.E(), power_law ? "power-law" : "uniform", degree,
+                          min_weight, max_weight);
+
+        // query inputs: random station pairs and valid 5-stop routes
+        final int Q = 1024;
+        final String[] src = new String[Q], dst = new String[Q];
+        final String[][] routes = new String[Q][];
+        Random random = new Random(seed);
+        for (int q = 0; q < Q; q++)
+        {
+            src[q] = csr.nameOf(random.nextInt(csr.V()));
+            dst[q] = csr.nameOf(random.nextInt(csr.V()));
+            int v = csr.indexOf(src[q]);
+            routes[q] = new String[6];
+            routes[q][0] = src[q];
+            for (int k = 1; k < 6; k++)
+            {
+                int e = csr.outBegin(v) + random.nextInt(csr.outEnd(v) - csr.outBegin(v));
+                v = csr.outTo(e);
+                routes[q][k] = csr.nameOf(v);
+            }
+        }
+        // bound for question 10: about three average edges
+        final int bound = 3 * (min_weight + max_weight) / 2;
+        final TrainsSP.Workspace ws = new TrainsSP.Workspace(csr.V());
+
+        List<Bench> benches = new ArrayList<Bench>();
+        benches.add(new Bench("findDistance") {
+            long op(int i) { return G.findDistance(routes[i & (Q - 1)]); } });
+        benches.add(new Bench("findDistanceCSR") {
+            long op(int i) { return csr.findDistance(routes[i & (Q - 1)]); } });
+        final String[] route_strings = new String[Q];
+        for (int q = 0; q < Q; q++) route_strings[q] = String.join("-", routes[q]);
+        benches.add(new Bench("findDistances" + Q) {
+            long op(int i) { return csr.findDistances(route_strings)[i & (Q - 1)]; } });
+        benches.add(new Bench("sp") {
+            long op(int i) {
+                TrainsSP sp = new TrainsSP(G, src[i & (Q - 1)], dst[i & (Q - 1)]);
+                Iterable<DirectedEdge> path = sp.pathTo(dst[i & (Q - 1)]);
+                return path == null ? 0 : path.hashCode();
+            } });
+        benches.add(new Bench("spWorkspace") {
+            long op(int i) {
+                TrainsSP sp = new TrainsSP(csr, src[i & (Q - 1)], dst[i & (Q - 1)], ws);
+                return sp.hasPathTo(dst[i & (Q - 1)]) ? 1 : 0;
+            } });
+        final TrainsLandmarks landmarks = new TrainsLandmarks(csr, 8);
+        benches.add(new Bench("p2pEarlyExit") {
+            long op(int i) {
+                return new TrainsP2P(csr, src[i & (Q - 1)], dst[i & (Q - 1)],
+                                     TrainsP2P.Mode.EARLY_EXIT).getSettledCount();
+            } });
+        benches.add(new Bench("p2pBidirectional") {
+            long op(int i) {
+                return new TrainsP2P(csr, src[i & (Q - 1)], dst[i & (Q - 1)]).getSettledCount();
+            } });
+        benches.add(new Bench("p2pALT") {
+            long op(int i) {
+                return new TrainsP2P(csr, src[i & (Q - 1)], dst[i & (Q - 1)], landmarks)
+                    .getSettledCount();
+            } });
+        for (final int quizno : new int[] { 6, 7, 10 })
+        {
+            benches.add(new Bench("bfs" + quizno) {
+                long op(int i) {
+                    return new TrainsBFS(G, src[i & (Q - 1)], dst[i & (Q - 1)], quizno, bound)
+                        .getTripCount();
+                } });
+            benches.add(new Bench("routes" + quizno) {
+                long op(int i) {
+                    return TrainsRoutes.count(csr, src[i & (Q - 1)], dst[i & (Q - 1)],
+                                              RouteCondition.forQuestion(quizno, bound));
+                } });
+        }
+        benches.add(new Bench("tripCounter6") {
+            long op(int i) {
+                return new TrainsTripCounter(csr, src[i & (Q - 1)], TrainsBFS.MAX_STOPS)
+                    .countAtMost(dst[i & (Q - 1)], TrainsBFS.MAX_STOPS);
+            } });
+        benches.add(new Bench("distCounter10") {
+            long op(int i) {
+                return new TrainsDistanceCounter(csr, src[i & (Q - 1)], bound)
+                    .countTo(dst[i & (Q - 1)]);
+            } });
+
+        for (Bench b : benches)
+        {
+            if (selected.isEmpty() || selected.contains(b.name)) run(b, warmup, rounds, millis);
+        }
+        if (sink == 42) System.out.println(); // keep sink alive
+    }
+}
@@ -0,0 +1,129 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsBounds.java
+ *  Execution:    java TrainsBounds
+ *  Dependencies: TrainsGraph.java, RouteCondition.java, IndexMinIntPQ.java
+ *                TrainsRoutes.java, TrainsDigraph.java, DirectedEdge.java
+ *
+ *  Lower bounds on what is left of a route to one destination: for every
+ *  vertex v, the least distance and the least number of stops of any path
+ *  from v to the destination. Both are computed once by searching backward
+ *  from the destination over the incoming edges (Dijkstra for the distance,
+ *  breadth-first for the stops). A route search can then drop a partial
+ *  route at v as soon as even the shortest way on could not satisfy its
+ *  RouteCondition, instead of finding out only when the bound is passed;
+ *  partial routes from which the destination cannot be reached at all are
+ *  dropped immediately.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+
+public class TrainsBounds {
+
+    public static final int INFINITY = Integer.MAX_VALUE;
+    private final TrainsGraph G;
+    private final int dest;
+    private final int[] min_dist;   // min_dist[v] = shortest distance from v to dest
+    private final int[] min_hops;   // min_hops[v] = fewest stops from v to dest
+
+    /* compute the bounds towards the named destination */
+    public TrainsBounds(TrainsGraph G, String dest) {
+        this.G = G;
+        this.dest = G.indexOf(dest);
+        if (this.dest < 0) throw new IllegalArgumentException("no such vertex: " + dest);
+        int V = G.V();
+        min_dist = new int[V];
+        min_hops = new int[V];
+        Arrays.fill(min_dist, INFINITY);
+        Arrays.fill(min_hops, INFINITY);
+
+        // distances: Dijkstra over the incoming edges
+        IndexMinIntPQ pq = new IndexMinIntPQ(V);
+        min_dist[this.dest] = 0;
+        pq.insert(this.dest, 0);
+        while (!pq.isEmpty())
+        {
+            int v = pq.delMin();
+            for (int i = G.inBegin(v); i < G.inEnd(v); i++)
+            {
+                int u = G.inFrom(i), d = min_dist[v] + G.inWeight(i);
+                if (d < min_dist[u])
+                {
+                    min_dist[u] = d;
+                    if (pq.contains(u)) pq.decreaseKey(u, d);
+                    else                pq.insert(u, d);
+                }
+            }
+        }
+
+        // stops: breadth-first over the incoming edges
+        int[] queue = new int[V];
+        int head = 0, tail = 0;
+        min_hops[this.dest] = 0;
+        queue[tail++] = this.dest;
+        while (head < tail)
+        {
+            int v = queue[head++];
+            for (int i = G.inBegin(v); i < G.inEnd(v); i++)
+            {
+                int u = G.inFrom(i);
+                if (min_hops[u] == INFINITY)
+                {
+                    min_hops[u] = min_hops[v] + 1;
+                    queue[tail++] = u;
+                }
+            }
+        }
+    }
+
+    /* the snapshot the bounds were computed on */
+    public TrainsGraph graph() {
+        return G;
+    }
+
+    /* vertex id of the destination */
+    public int dest() {
+        return dest;
+    }
+
+    /* least distance from v to the destination, INFINITY if unreachable */
+    public int minDist(int v) {
+        return min_dist[v];
+    }
+
+    /* fewest stops from v to the destination, INFINITY if unreachable */
+    public int minHops(int v) {
+        return min_hops[v];
+    }
+
+    /* can a partial route that has reached v after hops stops and distance
+     * dist still end at the destination in a way the condition accepts? */
+    public boolean canFinish(RouteCondition condition, int v, int hops, int dist) {
+        if (min_dist[v] == INFINITY) return false;
+        long h = (long) hops + min_hops[v], d = (long) dist + min_dist[v];
+        return condition.canFinish((int) Math.min(h, INFINITY), (int) Math.min(d, INFINITY));
+    }
+
+    // test method
+    public static void main(String[] args) {
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        TrainsCSR csr = G.snapshot();
+        TrainsBounds bounds = new TrainsBounds(csr, "C");
+        for (int v = 0; v < csr.V(); v++) {
+            System.out.println(csr.nameOf(v) + " to C: at least " + bounds.minDist(v)
+                               + " distance, " + bounds.minHops(v) + " stops");
+        }
+
+        // the same routes, with and without pruning
+        RouteCondition cond = RouteCondition.both(RouteCondition.atMostStops(8),
+                                                  RouteCondition.shorterThan(40));
+        System.out.println("A to C, " + cond + ": " + TrainsRoutes.count(csr, "A", "C", cond)
+                           + " routes, pruned search: "
+                           + TrainsRoutes.count(csr, "A", "C", cond, bounds));
+    }
+}
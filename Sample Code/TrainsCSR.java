@@ -0,0 +1,261 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsCSR.java
+ *  Execution:    java TrainsCSR
+ *  Dependencies: TrainsGraph.java, TrainsDigraph.java, DirectedEdge.java
+ *
+ *  Immutable, read-only snapshot of an edge-weighted directed graph in
+ *  compressed sparse row form, held in arrays on the heap (see TrainsGraph
+ *  for the read API and MappedTrainsGraph for the off-heap version).
+ *  Vertices are numbered 0..V-1; the edges leaving vertex v are
+ *  out_to/out_weight[out_offset[v] .. out_offset[v+1]) and the edges
+ *  entering v are mirrored in the in_* arrays. Walking the
+ *  arrays allocates nothing, so the search engines can run on a snapshot
+ *  without touching the hash maps of TrainsDigraph.
+ *
+ *  Route distances are looked up in an open-addressing table keyed on the
+ *  (from, to) pair packed into a long, built on first use, so each leg of
+ *  a route costs one probe instead of a scan of the adjacency list. When
+ *  several edges join the same pair of stations, a leg takes the lightest.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TrainsCSR extends TrainsGraph
+{
+    private final String[] names;           // names[v] = station name of vertex v
+    private final Map<String, Integer> ids; // inverse of names
+    private final int num_vertices, num_edges;
+
+    /* outgoing edges, grouped by source vertex, in insertion order */
+    private final int[] out_offset, out_from, out_to, out_weight;
+    /* incoming edges, grouped by target vertex; in_edge[i] is the
+     * index of the same edge in the outgoing arrays */
+    private final int[] in_offset, in_from, in_weight, in_edge;
+
+    /* (from, to) -> lightest weight; keys[slot] = from << 32 | to, -1 = empty */
+    private static final class WeightIndex
+    {
+        final long[] keys;
+        final int[] weights;
+        final int mask;
+
+        WeightIndex(long[] keys, int[] weights)
+        {
+            this.keys = keys;
+            this.weights = weights;
+            this.mask = keys.length - 1;
+        }
+    }
+    private volatile WeightIndex weight_index; // built on first use
+
+    /* build a snapshot from parallel edge arrays; from[i], to[i] are
+     * indices into names, and edges keep their relative order */
+    public TrainsCSR(String[] names, int[] from, int[] to, int[] weight, int num_edges)
+    {
+        int V = names.length;
+        this.names = names;
+        this.num_vertices = V;
+        this.num_edges = num_edges;
+        ids = new HashMap<String, Integer>(V * 2);
+        for (int v = 0; v < V; v++)
+        {
+            ids.put(names[v], v);
+        }
+
+        // counting sort by source vertex (stable)
+        out_offset = new int[V + 1];
+        out_from = new int[num_edges];
+        out_to = new int[num_edges];
+        out_weight = new int[num_edges];
+        for (int i = 0; i < num_edges; i++)
+        {
+            out_offset[from[i] + 1]++;
+        }
+        for (int v = 0; v < V; v++)
+        {
+            out_offset[v + 1] += out_offset[v];
+        }
+        int[] next = new int[V];
+        System.arraycopy(out_offset, 0, next, 0, V);
+        for (int i = 0; i < num_edges; i++)
+        {
+            int e = next[from[i]]++;
+            out_from[e] = from[i];
+            out_to[e] = to[i];
+            out_weight[e] = weight[i];
+        }
+
+        // counting sort of the outgoing edges by target vertex
+        in_offset = new int[V + 1];
+        in_from = new int[num_edges];
+        in_weight = new int[num_edges];
+        in_edge = new int[num_edges];
+        for (int e = 0; e < num_edges; e++)
+        {
+            in_offset[out_to[e] + 1]++;
+        }
+        for (int v = 0; v < V; v++)
+        {
+            in_offset[v + 1] += in_offset[v];
+        }
+        System.arraycopy(in_offset, 0, next, 0, V);
+        for (int e = 0; e < num_edges; e++)
+        {
+            int i = next[out_to[e]]++;
+            in_from[i] = out_from[e];
+            in_weight[i] = out_weight[e];
+            in_edge[i] = e;
+        }
+    }
+
+    /* wrap arrays that already hold a snapshot in CSR form, such as those
+     * read back from a snapshot file; the arrays are used as they are */
+    TrainsCSR(String[] names, int[] out_offset, int[] out_from, int[] out_to,
+              int[] out_weight, int[] in_offset, int[] in_from, int[] in_weight,
+              int[] in_edge)
+    {
+        int V = names.length, E = out_to.length;
+        if (out_offset.length != V + 1 || in_offset.length != V + 1
+            || out_offset[V] != E || in_offset[V] != E || out_from.length != E
+            || out_weight.length != E || in_from.length != E
+            || in_weight.length != E || in_edge.length != E)
+        {
+            throw new IllegalArgumentException("inconsistent CSR arrays");
+        }
+        this.names = names;
+        this.num_vertices = V;
+        this.num_edges = E;
+        ids = new HashMap<String, Integer>(V * 2);
+        for (int v = 0; v < V; v++)
+        {
+            ids.put(names[v], v);
+        }
+        this.out_offset = out_offset;
+        this.out_from = out_from;
+        this.out_to = out_to;
+        this.out_weight = out_weight;
+        this.in_offset = in_offset;
+        this.in_from = in_from;
+        this.in_weight = in_weight;
+        this.in_edge = in_edge;
+    }
+
+    /* return the number of vertices in this snapshot */
+    public int V()
+    {
+        return num_vertices;
+    }
+
+    /* return the number of edges in this snapshot */
+    public int E()
+    {
+        return num_edges;
+    }
+
+    /* return the id of the named vertex, or -1 if it is not in the graph */
+    public int indexOf(String v)
+    {
+        Integer id = ids.get(v);
+        return id == null ? -1 : id;
+    }
+
+    /* return the name of vertex v */
+    public String nameOf(int v)
+    {
+        return names[v];
+    }
+
+    /* first and one-past-last index of the edges leaving vertex v */
+    public int outBegin(int v) { return out_offset[v];     }
+    public int outEnd(int v)   { return out_offset[v + 1]; }
+
+    /* endpoints and weight of outgoing edge e */
+    public int outFrom(int e)   { return out_from[e];   }
+    public int outTo(int e)     { return out_to[e];     }
+    public int outWeight(int e) { return out_weight[e]; }
+
+    /* first and one-past-last index of the edges entering vertex v */
+    public int inBegin(int v) { return in_offset[v];     }
+    public int inEnd(int v)   { return in_offset[v + 1]; }
+
+    /* tail, weight and outgoing-edge index of incoming edge i */
+    public int inFrom(int i)   { return in_from[i];   }
+    public int inWeight(int i) { return in_weight[i]; }
+    public int inEdge(int i)   { return in_edge[i];   }
+
+    /* the weight index, built by the first thread that needs it; racing
+     * threads may each build one, but every copy is identical */
+    private WeightIndex weightIndex()
+    {
+        WeightIndex index = weight_index;
+        if (index == null)
+        {
+            int capacity = Integer.highestOneBit(Math.max(2 * num_edges, 2) - 1) << 1;
+            long[] keys = new long[capacity];
+            int[] weights = new int[capacity];
+            Arrays.fill(keys, -1L);
+            index = new WeightIndex(keys, weights);
+            for (int e = 0; e < num_edges; e++)
+            {
+                long key = (long) out_from[e] << 32 | out_to[e];
+                int slot = slot(index, key);
+                if (keys[slot] == -1L)
+                {
+                    keys[slot] = key;
+                    weights[slot] = out_weight[e];
+                }
+                else if (out_weight[e] < weights[slot])
+                {
+                    weights[slot] = out_weight[e];
+                }
+            }
+            weight_index = index;
+        }
+        return index;
+    }
+
+    /* slot holding key, or the empty slot where it would go */
+    private static int slot(WeightIndex index, long key)
+    {
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & index.mask;
+        while (index.keys[slot] != -1L && index.keys[slot] != key)
+        {
+            slot = (slot + 1) & index.mask;
+        }
+        return slot;
+    }
+
+    /* weight of the lightest edge from v to w, or -1 if there is none */
+    public int weight(int v, int w)
+    {
+        WeightIndex index = weightIndex();
+        long key = (long) v << 32 | w;
+        int slot = slot(index, key);
+        return index.keys[slot] == key ? index.weights[slot] : -1;
+    }
+
+    /**
+     * Test client.
+     */
+    public static void main(String[] args) {
+        TrainsDigraph G = new TrainsDigraph(4);
+        G.addEdge(new DirectedEdge("A","B",3));
+        G.addEdge(new DirectedEdge("B","C",1));
+        G.addEdge(new DirectedEdge("C","A",2));
+        G.addEdge(new DirectedEdge("A","D",3));
+        G.addEdge(new DirectedEdge("D","C",4));
+        TrainsCSR csr = G.snapshot();
+        System.out.println(csr);
+        System.out.println("A-B-C = " + csr.findDistance(new String[] {"A", "B", "C"}));
+        System.out.println("A-C   = " + csr.findDistance(new String[] {"A", "C"}));
+
+        // a parallel edge counts once, with the lighter weight
+        G.addEdge(new DirectedEdge("A","B",2));
+        csr = G.snapshot();
+        int[] dist = csr.findDistances(new String[] {"A-B-C", "A-D-C", "A-C", "A-Z", "A"});
+        System.out.println("A-B-C, A-D-C, A-C, A-Z, A = " + Arrays.toString(dist));
+    }
+}
@@ -3,8 +3,12 @@
  *  Date: 07/08/2012
  *  Compilation:  javac TrainsClient.java
  *  Execution:    java TrainsClient
+ *                java TrainsClient -batch input.txt queries.txt
+ *                java TrainsClient -export input.txt graph.snap
  *  Dependencies: TrainsDigraph.java, DirectedEdge.java, TrainsSP.java
- *                TrainsBFS.java
+ *                TrainsRoutes.java, RouteCondition.java, TrainsBatch.java
+ *                TrainsQuery.java, TrainsGraphLoader.java
+ *                TrainsSnapshotFile.java, TrainsBounds.java
  * 
  *  Trains Problem Test client. Finds the distance of a given path,
  *  the number of trips between any two vertices and the shortest 
@@ -12,15 +16,24 @@
  * 
  * *******************************************************************/
 import java.util.Scanner;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
-import java.io.File;
+import java.util.List;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
 
 public class TrainsClient{    
     
     /* print the distance of this path in the graph, or report if such 
      * a path does not exist */
     public String printDistance(TrainsDigraph graph, String path)
+    {
+        return printDistance(graph.snapshot(), path);
+    }
+    
+    /* print the distance of this path in a graph snapshot */
+    public String printDistance(TrainsGraph graph, String path)
     {
         String [] vertices = path.split("-");        
         int path_dist = graph.findDistance(vertices);
@@ -34,14 +47,132 @@ public class TrainsClient{
         }
     }
      
+    /* print each route between src and dest that answers the question as
+     * it is found, and return the number of routes printed */
+    public long printRoutes(TrainsDigraph graph, String src, String dest, int quizno)
+    {
+        return printRoutes(graph.snapshot(), src, dest, quizno);
+    }
+    
+    /* print the routes that answer the question in a graph snapshot,
+     * pruned with bounds to dest when it is in the graph */
+    public long printRoutes(TrainsGraph graph, String src, String dest, int quizno)
+    {
+        RouteCondition condition = RouteCondition.forQuestion(quizno);
+        TrainsRoutes routes = graph.indexOf(dest) < 0
+            ? new TrainsRoutes(graph, src, dest, condition)
+            : new TrainsRoutes(graph, src, dest, condition, new TrainsBounds(graph, dest));
+        long trip_count = 0;
+        while (routes.hasNext())
+        {
+            System.out.println("path " +trip_count+ ": " +routes.next());
+            trip_count++;
+        }
+        return trip_count;
+    }
+     
     /* print line delimiter between outputs */
     public void formatOutput(int quizno)
     {
         System.out.println("\n----------Question " +quizno+ " Ouptput-----------\n");
     }
  
-    /* trains problem test client */ 
-    public static void main(String[] args) {
+    /* read the graph from a comma-delimited file of edges such as AB5 */
+    public static TrainsDigraph readGraph(String filename) throws IOException
+    {
+        return TrainsGraphLoader.load(filename);
+    }
+    
+    /* read a graph snapshot from either a binary snapshot file or a text
+     * file of edges */
+    public static TrainsCSR readSnapshot(String filename) throws IOException
+    {
+        if (TrainsSnapshotFile.isSnapshot(filename))
+        {
+            return TrainsSnapshotFile.read(filename);
+        }
+        return TrainsGraphLoader.loadSnapshot(filename);
+    }
+    
+    /* open a graph for searching: a binary snapshot file is memory-mapped
+     * and searched in place, so it may be larger than the heap; a text file
+     * of edges is loaded */
+    public static TrainsGraph openGraph(String filename) throws IOException
+    {
+        if (TrainsSnapshotFile.isSnapshot(filename))
+        {
+            return TrainsSnapshotFile.map(filename);
+        }
+        return TrainsGraphLoader.loadSnapshot(filename);
+    }
+    
+    /* answer every query in queryfile against the graph in graphfile, one
+     * answer per line in input order, and report throughput on stderr */
+    public static void runBatch(String graphfile, String queryfile) throws IOException
+    {
+        long start = System.nanoTime();
+        TrainsGraph graph = openGraph(graphfile);
+        long loaded = System.nanoTime();
+        
+        List<TrainsQuery> queries = new ArrayList<TrainsQuery>();
+        List<String> errors = new ArrayList<String>(); // parse errors, by query
+        BufferedReader reader = new BufferedReader(new FileReader(queryfile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) continue;
+                try {
+                    queries.add(TrainsQuery.parse(line));
+                    errors.add(null);
+                }
+                catch (IllegalArgumentException e) {
+                    queries.add(null);
+                    errors.add("ERROR: " + e.getMessage());
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        
+        List<TrainsQuery> valid = new ArrayList<TrainsQuery>();
+        for (TrainsQuery q : queries) if (q != null) valid.add(q);
+        String[] answers = new TrainsBatch(graph).run(valid);
+        long done = System.nanoTime();
+        
+        StringBuilder out = new StringBuilder();
+        for (int i = 0, j = 0; i < queries.size(); i++)
+        {
+            if (queries.get(i) == null) out.append(errors.get(i));
+            else out.append(queries.get(i)).append(" : ").append(answers[j++]);
+            out.append('\n');
+        }
+        System.out.print(out);
+        System.out.flush();
+        
+        double secs = (done - loaded) / 1e9;
+        System.err.printf("%d queries in %.3f s (%.0f queries/s), graph loaded in %.3f s%n",
+                          queries.size(), secs, queries.size() / Math.max(secs, 1e-9),
+                          (loaded - start) / 1e9);
+    }
+ 
+    /* trains problem test client; run with -batch graphfile queryfile to
+     * answer a file of queries instead of a single interactive question,
+     * or with -export graphfile snapfile to save a binary snapshot */ 
+    public static void main(String[] args) throws IOException {
+        
+        if (args.length == 3 && args[0].equals("-batch"))
+        {
+            runBatch(args[1], args[2]);
+            return;
+        }
+        if (args.length == 3 && args[0].equals("-export"))
+        {
+            TrainsSnapshotFile.write(readSnapshot(args[1]), args[2]);
+            return;
+        }
         
         Scanner inputstream = null;
         try {
@@ -51,44 +182,12 @@ public class TrainsClient{
             System.out.println(e);
         }
         
-        // parse the input graph from a comma-delimited file 
-        inputstream.useDelimiter("\\s*,\\s*"); 
-        LinkedList<String> inputlist = new LinkedList<String>();
-        
         // prompt user input
         System.out.println("Please enter the text filename containing the graph: ");        
         String filename = inputstream.nextLine();
-        Scanner fscanner = null;
-        try {
-            fscanner = new Scanner(new File(filename));
-        } 
-        catch (Exception e) 
-        {             
-            System.out.println(e);
-        }
-        
-        // read all vertices/edges from the graph
-        while (fscanner.hasNext())
-        {
-            inputlist.add(fscanner.next());
-        }
-        
-        int inputsize = inputlist.size(); // size of the graph 
-        String [] inputarray = inputlist.toArray(new String[inputsize]);
         TrainsClient client = new TrainsClient ();
-        TrainsDigraph graph = new TrainsDigraph(inputsize);        
-        TrainsBFS trainsbfs = null;
-        
-        // create graph 
-        for (int i = 0; i < inputsize; i++)
-        {
-            String vertex1 = Character.toString(inputarray[i].charAt(0));
-            String vertex2 = Character.toString(inputarray[i].charAt(1));
-            int weight = Integer.parseInt(Character.toString(inputarray[i].charAt(2))); 
-            
-            DirectedEdge e = new DirectedEdge(vertex1, vertex2, weight);
-            graph.addEdge(e);
-        }
+        TrainsGraph graph = openGraph(filename);        
+        long trip_count = 0;
         
         System.out.println("Enter question number, e.g 2");
         int quizno = Integer.parseInt(inputstream.nextLine());
@@ -114,9 +213,9 @@ public class TrainsClient{
                 System.out.println("Enter destination city");
                 dest = inputstream.nextLine();
                 client.formatOutput(quizno);
-                trainsbfs= new TrainsBFS (graph, src, dest, quizno);
+                trip_count = client.printRoutes(graph, src, dest, quizno);
                 System.out.print("Number of routes between " +src+ " and " +dest);
-                System.out.println(" = " +trainsbfs.getTripCount());
+                System.out.println(" = " +trip_count);
                 break;
                 
             case 7: 
@@ -125,9 +224,9 @@ public class TrainsClient{
                 System.out.println("Enter destination city");
                 dest = inputstream.nextLine();
                 client.formatOutput(quizno);
-                trainsbfs= new TrainsBFS (graph, src, dest, quizno);
+                trip_count = client.printRoutes(graph, src, dest, quizno);
                 System.out.print("Number of routes between " +src+ " and " +dest);
-                System.out.println(" = " +trainsbfs.getTripCount());
+                System.out.println(" = " +trip_count);
                 break;
             case 8:
             case 9: 
@@ -146,10 +245,10 @@ public class TrainsClient{
                 System.out.println("Enter destination city");
                 dest = inputstream.nextLine();
                 client.formatOutput(quizno);
-                trainsbfs= new TrainsBFS (graph, src, dest, quizno);
-                System.out.print("Number of routes with max. distance = 30 " +
-                                     "between " +src+ " and " +dest);
-                System.out.println(" = " +trainsbfs.getTripCount());
+                trip_count = client.printRoutes(graph, src, dest, quizno);
+                System.out.print("Number of routes with max. distance = " +
+                                     TrainsBFS.MAX_DIST+ " between " +src+ " and " +dest);
+                System.out.println(" = " +trip_count);
                 break;            
         } 
 
@@ -7,10 +7,15 @@
  *
  *  An edge-weighted directed graph, implemented using hash maps. The graph 
  *  is represented as a hash map where vertices are keys to a list of 
- *  directed edge values - edges that point from and to a particular vertex
+ *  directed edge values - edges that point from and to a particular vertex.
+ *  Vertices are also numbered in order of first appearance, and a frozen
+ *  TrainsCSR snapshot of the graph is cached until the next addEdge.
+ *  The graph is not thread-safe; use ConcurrentTrainsDigraph when edges
+ *  are added while queries are running.
  *  
  *************************************************************************/
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -23,12 +28,19 @@ public class TrainsDigraph
    private int num_vertices = 0, num_edges = 0; 
    /* edges pointing away from this vertex, and edges pointing to this vertex */
    private Map<String, LinkedHashSet<DirectedEdge>> edges_from_map, edges_to_map;
+   /* integer ids of the vertices, in order of first appearance */
+   private Map<String, Integer> vertex_ids;
+   private ArrayList<String> vertex_names;
+   private volatile TrainsCSR snapshot; // frozen copy, null after a change
+   private volatile long version = 0; // incremented by every change to the graph
    
    /* create an empty graph with N vertices */
    public TrainsDigraph(int N)
    {
       edges_from_map = new HashMap<String, LinkedHashSet<DirectedEdge>>();
       edges_to_map = new HashMap<String, LinkedHashSet<DirectedEdge>>();
+      vertex_ids = new HashMap<String, Integer>();
+      vertex_names = new ArrayList<String>();
       num_vertices = N;
    }
    
@@ -39,6 +51,8 @@ public class TrainsDigraph
    {
       String v = e.from();
       String w = e.to();
+      intern(v);
+      intern(w);
       LinkedHashSet<DirectedEdge> adj_edges_from = edges_from_map.get(v); 
       LinkedHashSet<DirectedEdge> adj_edges_to = edges_to_map.get(w);
       if (adj_edges_from == null) // empty set of edges from vertex v
@@ -56,6 +70,107 @@ public class TrainsDigraph
       } 
       adj_edges_to.add(e); // add this edge to the already existing set
       num_edges += 1;
+      snapshot = null;
+      version++;
+   }
+   
+   /* return the version of this graph; it changes whenever an edge is added,
+    * so results computed from the graph can tell when they are out of date */
+   public long getVersion()
+   {
+       return version;
+   }
+   
+   /* add every edge of a snapshot in bulk; when this graph is still empty
+    * it takes over the snapshot's vertex ids and keeps the snapshot itself
+    * as its cached copy, so it does not have to be rebuilt */
+   public void addEdges(TrainsCSR G)
+   {
+      boolean empty = num_edges == 0 && vertex_names.isEmpty();
+      String[] names = new String[G.V()];
+      for (int v = 0; v < names.length; v++)
+      {
+          names[v] = G.nameOf(v);
+          intern(names[v]);
+      }
+      for (int e = 0; e < G.E(); e++)
+      {
+          addEdge(new DirectedEdge(names[G.outFrom(e)], names[G.outTo(e)], G.outWeight(e)));
+      }
+      if (empty)
+      {
+          snapshot = G;
+      }
+   }
+   
+   /* assign the next free id to vertex v if it has none yet */
+   private int intern(String v)
+   {
+      Integer id = vertex_ids.get(v);
+      if (id == null)
+      {
+          id = vertex_names.size();
+          vertex_ids.put(v, id);
+          vertex_names.add(v);
+      }
+      return id;
+   }
+   
+   /* add station v without any edges if it is not in the graph yet, and
+    * return its id; other station tables (such as a timetable) use this
+    * to share the graph's vertex ids */
+   public int addVertex(String v)
+   {
+      int n = vertex_names.size();
+      int id = intern(v);
+      if (vertex_names.size() != n)
+      {
+          snapshot = null;
+          version++;
+      }
+      return id;
+   }
+
+   /* return the id of vertex v, or -1 if v is not in this graph */
+   public int indexOf(String v)
+   {
+       Integer id = vertex_ids.get(v);
+       return id == null ? -1 : id;
+   }
+   
+   /* return the vertex with the given id */
+   public String nameOf(int id)
+   {
+       return vertex_names.get(id);
+   }
+   
+   /* return a frozen CSR copy of this graph; the copy is built once and
+    * shared until the graph is changed again */
+   public TrainsCSR snapshot()
+   {
+       TrainsCSR csr = snapshot;
+       if (csr == null)
+       {
+           String[] names = vertex_names.toArray(new String[vertex_names.size()]);
+           int[] from = new int[num_edges], to = new int[num_edges];
+           int[] weight = new int[num_edges];
+           int i = 0;
+           for (String v : names)
+           {
+               LinkedHashSet<DirectedEdge> adj_edges_from = edges_from_map.get(v);
+               if (adj_edges_from == null) continue;
+               for (DirectedEdge e : adj_edges_from)
+               {
+                   from[i] = vertex_ids.get(e.from());
+                   to[i] = vertex_ids.get(e.to());
+                   weight[i] = e.weight();
+                   i++;
+               }
+           }
+           csr = new TrainsCSR(names, from, to, weight, i);
+           snapshot = csr;
+       }
+       return csr;
    }
    
    /* return the number of vertices in this graph */
@@ -112,32 +227,12 @@ public class TrainsDigraph
        return union;
    }
       
-   /* find the distance of the path represented by the vertices */
+   /* find the distance of the path represented by the vertices, or -1 if
+    * some leg is not an edge; each leg is one lookup in the snapshot's
+    * weight index, and takes the lightest of any parallel edges */
    public Integer findDistance (String [] vertices)
     {        
-        int total_dist = 0;
-        for (int i = 0; i < vertices.length - 1; i++) 
-        {
-            String v, w;
-            // split string into consecute overlapping vertex pairs
-            v = vertices[i];
-            w = vertices[i+1];
-            boolean isMember = false; // w is a member of v's adjacency list
-            Iterable<DirectedEdge> adj_edges_from = adjEdgesFrom(v);
-                
-            for(DirectedEdge e : adj_edges_from){
-                if (e.to().equals(w))
-                {
-                    total_dist += e.weight();
-                    isMember = true;
-                }
-            }
-            if (!isMember)
-            {
-                return -1;
-            }                
-        }
-        return total_dist;
+        return snapshot().findDistance(vertices);
     }
    
    /**
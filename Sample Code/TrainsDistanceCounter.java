@@ -0,0 +1,125 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsDistanceCounter.java
+ *  Execution:    java TrainsDistanceCounter
+ *  Dependencies: TrainsDigraph.java, TrainsGraph.java, TrainsBFS.java
+ *                DirectedEdge.java
+ *
+ *  Counts the routes from a single source whose total distance is below a
+ *  bound (question 10) without enumerating them. ways[d][v] is the number
+ *  of routes from the source that end at v with distance exactly d, and is
+ *  the sum of ways[d - w][u] over the edges u->v of weight w. An edge of
+ *  weight bound or more can never be part of a route below the bound, so
+ *  it is skipped, and only the last (w + 1) distance layers are kept, in a
+ *  ring, for w the heaviest edge lighter than the bound. The work is
+ *  O(bound * (V + E)) and the memory O(min(max weight, bound) * V),
+ *  whatever the number of routes. All edge weights must be positive.
+ *
+ *************************************************************************/
+
+public class TrainsDistanceCounter {
+
+    private static final long OVERFLOW = -1; // marks a count that exceeded a long
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8; // largest array size
+    private long[] total;        // total[v] = routes from source to v with 0 < distance < bound
+    private int bound;
+    private TrainsGraph G;
+
+    /* count all routes from source shorter than bound */
+    public TrainsDistanceCounter(TrainsDigraph G, String source, int bound) {
+        this(G.snapshot(), source, bound);
+    }
+
+    /* count all routes from source shorter than bound over a snapshot */
+    public TrainsDistanceCounter(TrainsGraph G, String source, int bound) {
+        int s = G.indexOf(source);
+        if (s < 0) throw new IllegalArgumentException("no such vertex: " + source);
+        if (bound < 0) throw new IllegalArgumentException("negative distance bound");
+        this.G = G;
+        this.bound = bound;
+        int V = G.V();
+
+        int max_weight = 0; // heaviest edge that can be on a route below the bound
+        for (int e = 0; e < G.E(); e++)
+        {
+            int w = G.outWeight(e);
+            if (w <= 0)
+                throw new IllegalArgumentException("edge weights must be positive: " + G.edge(e));
+            if (w < bound) max_weight = Math.max(max_weight, w);
+        }
+
+        // ring of distance layers: layer d lives at ((d % ring) * V)
+        int ring = max_weight + 1;
+        long size = (long) ring * V;
+        if (size > MAX_ARRAY)
+            throw new IllegalArgumentException("cannot keep " + ring + " distance layers for "
+                                               + V + " vertices");
+        long[] ways = new long[(int) size];
+        total = new long[V];
+        ways[s] = 1;
+
+        for (int d = 1; d < bound; d++)
+        {
+            int curr = (d % ring) * V;
+            for (int v = 0; v < V; v++)
+            {
+                long count = 0;
+                for (int i = G.inBegin(v); i < G.inEnd(v); i++)
+                {
+                    int w = G.inWeight(i);
+                    if (w > d) continue; // also skips every edge of weight bound or more
+                    count = add(count, ways[((d - w) % ring) * V + G.inFrom(i)]);
+                }
+                ways[curr + v] = count;
+                total[v] = add(total[v], count);
+            }
+        }
+    }
+
+    /* add two counts, either of which may already have overflowed */
+    private static long add(long a, long b) {
+        if (a == OVERFLOW || b == OVERFLOW) return OVERFLOW;
+        long sum = a + b;
+        return sum < 0 ? OVERFLOW : sum;
+    }
+
+    /* number of routes from the source to dest with 0 < distance < bound;
+     * 0 if dest is not in the graph */
+    public long countTo(String dest) {
+        int d = G.indexOf(dest);
+        if (d < 0) return 0;
+        if (total[d] == OVERFLOW) throw new ArithmeticException("route count overflow");
+        return total[d];
+    }
+
+    /* the distance bound the counts were computed for */
+    public int bound() {
+        return bound;
+    }
+
+    // test method
+    public static void main(String[] args) {
+
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+
+        // question 10, checked against the exhaustive search
+        TrainsDistanceCounter c = new TrainsDistanceCounter(G, "C", 30);
+        System.out.println("C to C, distance < 30 = " + c.countTo("C") + " (BFS: "
+                           + new TrainsBFS(G, "C", "C", 10).getTripCount() + ")");
+
+        // large bounds cost time linear in the bound
+        for (int bound = 100; bound <= 1000; bound += 300) {
+            TrainsDistanceCounter big = new TrainsDistanceCounter(G, "C", bound);
+            try {
+                System.out.println("C to C, distance < " + bound + " = " + big.countTo("C"));
+            }
+            catch (ArithmeticException e) {
+                System.out.println("C to C, distance < " + bound + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsGraph.java
+ *  Dependencies: DirectedEdge.java
+ *
+ *  Read-only view of an edge-weighted directed graph in compressed sparse
+ *  row form, the API every search engine runs on. Vertices are numbered
+ *  0..V-1; the edges leaving v are numbered outBegin(v) .. outEnd(v)-1,
+ *  and the edges entering v are listed separately by inBegin(v) ..
+ *  inEnd(v)-1, each pointing back at its outgoing number. TrainsCSR keeps
+ *  the arrays on the heap; MappedTrainsGraph reads them straight out of a
+ *  memory-mapped snapshot file. Route distances are derived here from the
+ *  accessors, and a subclass may supply a faster weight lookup.
+ *
+ *************************************************************************/
+
+public abstract class TrainsGraph
+{
+    /* return the number of vertices */
+    public abstract int V();
+
+    /* return the number of edges */
+    public abstract int E();
+
+    /* return the id of the named vertex, or -1 if it is not in the graph */
+    public abstract int indexOf(String v);
+
+    /* return the name of vertex v */
+    public abstract String nameOf(int v);
+
+    /* first and one-past-last index of the edges leaving vertex v */
+    public abstract int outBegin(int v);
+    public abstract int outEnd(int v);
+
+    /* endpoints and weight of outgoing edge e */
+    public abstract int outFrom(int e);
+    public abstract int outTo(int e);
+    public abstract int outWeight(int e);
+
+    /* first and one-past-last index of the edges entering vertex v */
+    public abstract int inBegin(int v);
+    public abstract int inEnd(int v);
+
+    /* tail, weight and outgoing-edge index of incoming edge i */
+    public abstract int inFrom(int i);
+    public abstract int inWeight(int i);
+    public abstract int inEdge(int i);
+
+    /* return outgoing edge e as a DirectedEdge */
+    public DirectedEdge edge(int e)
+    {
+        return new DirectedEdge(nameOf(outFrom(e)), nameOf(outTo(e)), outWeight(e));
+    }
+
+    /* weight of the lightest edge from v to w, or -1 if there is none */
+    public int weight(int v, int w)
+    {
+        int best = -1;
+        for (int e = outBegin(v); e < outEnd(v); e++)
+        {
+            if (outTo(e) == w && (best < 0 || outWeight(e) < best)) best = outWeight(e);
+        }
+        return best;
+    }
+
+    /* find the distance of the path given by vertex ids, or -1 if some
+     * leg of the path is not an edge of the graph */
+    public int findDistance(int[] vertices)
+    {
+        return findDistance(vertices, 0, vertices.length);
+    }
+
+    /* distance of the path given by vertices[lo..hi), or -1 */
+    private int findDistance(int[] vertices, int lo, int hi)
+    {
+        int total_dist = 0;
+        for (int i = lo; i < hi - 1; i++)
+        {
+            int v = vertices[i], w = vertices[i+1];
+            if (v < 0 || w < 0) return -1;
+            int weight = weight(v, w);
+            if (weight < 0)
+            {
+                return -1;
+            }
+            total_dist += weight;
+        }
+        return total_dist;
+    }
+
+    /* find the distance of the path represented by the vertices */
+    public int findDistance(String[] vertices)
+    {
+        int[] path = new int[vertices.length];
+        for (int i = 0; i < vertices.length; i++)
+        {
+            path[i] = indexOf(vertices[i]);
+            if (path[i] < 0) return -1;
+        }
+        return findDistance(path);
+    }
+
+    /* distances of many routes at once; route r is the vertex ids
+     * stops[route_offset[r] .. route_offset[r+1]), and its distance is
+     * -1 if some leg is not an edge (or some id is negative) */
+    public int[] findDistances(int[] stops, int[] route_offset)
+    {
+        int[] dist = new int[route_offset.length - 1];
+        for (int r = 0; r < dist.length; r++)
+        {
+            dist[r] = findDistance(stops, route_offset[r], route_offset[r + 1]);
+        }
+        return dist;
+    }
+
+    /* distances of routes written as "A-B-C", -1 for each route that
+     * does not exist */
+    public int[] findDistances(String[] routes)
+    {
+        int[] route_offset = new int[routes.length + 1];
+        int num_stops = 0;
+        for (int r = 0; r < routes.length; r++)
+        {
+            String route = routes[r];
+            num_stops++;
+            for (int i = 0; i < route.length(); i++)
+            {
+                if (route.charAt(i) == '-') num_stops++;
+            }
+        }
+        int[] stops = new int[num_stops];
+        int n = 0;
+        for (int r = 0; r < routes.length; r++)
+        {
+            String route = routes[r];
+            route_offset[r] = n;
+            int start = 0;
+            for (int i = 0; i <= route.length(); i++)
+            {
+                if (i == route.length() || route.charAt(i) == '-')
+                {
+                    stops[n++] = indexOf(route.substring(start, i));
+                    start = i + 1;
+                }
+            }
+        }
+        route_offset[routes.length] = n;
+        return findDistances(stops, route_offset);
+    }
+
+    /**
+     * Return a string representation of this graph.
+     */
+    public String toString() {
+        String NEWLINE = System.getProperty("line.separator");
+        StringBuilder s = new StringBuilder();
+        s.append(V() + " " + E() + NEWLINE);
+        for (int v = 0; v < V(); v++) {
+            s.append(nameOf(v) + ": ");
+            for (int e = outBegin(v); e < outEnd(v); e++) {
+                s.append(nameOf(v) + "->" + nameOf(outTo(e)) + " " + outWeight(e) + "  ");
+            }
+            s.append(NEWLINE);
+        }
+        return s.toString();
+    }
+}
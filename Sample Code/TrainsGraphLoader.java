@@ -0,0 +1,347 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsGraphLoader.java
+ *  Execution:    java TrainsGraphLoader input.txt [compact|records]
+ *  Dependencies: TrainsDigraph.java, TrainsCSR.java
+ *
+ *  Loads a graph from a text file of edges. The file is memory-mapped and
+ *  scanned byte by byte without regular expressions; station names are
+ *  interned to int ids straight from the bytes, so a String is only made
+ *  the first time a station is seen. Tokens are separated by commas,
+ *  semicolons or white space, and a file holds records of one of two
+ *  forms:
+ *
+ *      AB5, BC4, CD8           COMPACT: two one-character stations and the
+ *                              weight in one token
+ *      Paris,Lyon,465          RECORDS: FROM,TO,WEIGHT with names of any
+ *                              length
+ *
+ *  Weights may have any number of digits, and a name may not consist of
+ *  digits only. Characters are UTF-8, so a compact token is two characters
+ *  of any number of bytes each, followed by digits. A token such as ST12
+ *  is a compact record in one form and a station name in the other, so
+ *  the form is decided once per file: by the caller, or (AUTO) from the
+ *  first three tokens. The third token of a RECORDS file is a weight, all
+ *  digits, which no compact record is; otherwise the file is COMPACT if
+ *  its first token is compact-shaped. A file of fewer than three tokens is
+ *  COMPACT if every token is compact-shaped.
+ *
+ *************************************************************************/
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class TrainsGraphLoader {
+
+    private static final long WINDOW = 1L << 30; // bytes mapped at a time
+
+    /* interning table: station bytes -> id */
+    private byte[] name_bytes = new byte[1 << 12]; // bytes of every name, back to back
+    private int[] name_start = new int[64];        // name_start[id] = offset in name_bytes
+    private String[] names = new String[64];
+    private int num_names = 0, name_bytes_used = 0;
+    private int[] table = new int[128];            // open addressing, -1 = empty
+
+    /* parsed edges */
+    private int[] from = new int[1024], to = new int[1024], weight = new int[1024];
+    private int num_edges = 0;
+
+    /* the form of the records in a file */
+    public enum Format { AUTO, COMPACT, RECORDS }
+
+    /* parser state across tokens */
+    private Format format;                         // AUTO until the first three tokens are seen
+    private byte[][] held = new byte[2][];         // tokens held back while the format is AUTO
+    private int num_held = 0;
+    private int pending = 0;                       // names read for the current record
+    private int pending_from, pending_to;
+
+    private TrainsGraphLoader(Format format) {
+        this.format = format;
+        Arrays.fill(table, -1);
+    }
+
+    /* load the edge list in filename into a frozen snapshot, telling its
+     * form from the first three tokens */
+    public static TrainsCSR loadSnapshot(String filename) throws IOException {
+        return loadSnapshot(filename, Format.AUTO);
+    }
+
+    /* load the edge list in filename, whose records have the given form,
+     * into a frozen snapshot */
+    public static TrainsCSR loadSnapshot(String filename, Format format) throws IOException {
+        TrainsGraphLoader loader = new TrainsGraphLoader(format);
+        loader.parseFile(filename);
+        return new TrainsCSR(Arrays.copyOf(loader.names, loader.num_names),
+                             loader.from, loader.to, loader.weight, loader.num_edges);
+    }
+
+    /* load the edge list in filename into a new TrainsDigraph */
+    public static TrainsDigraph load(String filename) throws IOException {
+        return load(filename, Format.AUTO);
+    }
+
+    /* load the edge list in filename, whose records have the given form,
+     * into a new TrainsDigraph */
+    public static TrainsDigraph load(String filename, Format format) throws IOException {
+        TrainsCSR csr = loadSnapshot(filename, format);
+        TrainsDigraph G = new TrainsDigraph(csr.V());
+        G.addEdges(csr);
+        return G;
+    }
+
+    /* map the file window by window and parse every token in it */
+    private void parseFile(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size(), pos = 0;
+            while (pos < size)
+            {
+                long len = Math.min(WINDOW, size - pos);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                int end = (int) len;
+                if (pos + len < size)
+                {
+                    // stop at the last separator so no token spans two windows
+                    while (end > 0 && !isSeparator(buf.get(end - 1))) end--;
+                    if (end == 0) throw new IOException("token longer than " + WINDOW + " bytes");
+                }
+                parse(buf, end);
+                pos += end;
+            }
+        }
+        finally {
+            file.close();
+        }
+        if (format == Format.AUTO)
+        {
+            // a file of fewer than three tokens
+            boolean compact = num_held > 0;
+            for (int i = 0; i < num_held; i++)
+                compact &= compactSplit(held[i], held[i].length) > 0;
+            decide(compact ? Format.COMPACT : Format.RECORDS);
+        }
+        if (pending != 0)
+            throw new IllegalArgumentException("incomplete edge record at end of " + filename);
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ',' || b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == ';';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /* split buf[0..end) into tokens */
+    private void parse(MappedByteBuffer buf, int end) {
+        int i = 0;
+        byte[] token = new byte[64];
+        while (i < end)
+        {
+            while (i < end && isSeparator(buf.get(i))) i++;
+            int len = 0;
+            while (i < end && !isSeparator(buf.get(i)))
+            {
+                if (len == token.length) token = Arrays.copyOf(token, 2 * len);
+                token[len++] = buf.get(i++);
+            }
+            if (len > 0) token(token, len);
+        }
+    }
+
+    /* handle one token, deciding the format first if it is still AUTO */
+    private void token(byte[] t, int len) {
+        if (format == Format.AUTO)
+        {
+            if (num_held < held.length)
+            {
+                held[num_held++] = Arrays.copyOf(t, len);
+                return;
+            }
+            boolean weight = true;
+            for (int i = 0; i < len; i++) weight &= isDigit(t[i]);
+            boolean compact = !weight && compactSplit(held[0], held[0].length) > 0;
+            decide(compact ? Format.COMPACT : Format.RECORDS);
+        }
+        record(t, len);
+    }
+
+    /* settle the format and handle the tokens held back until now */
+    private void decide(Format format) {
+        this.format = format;
+        for (int i = 0; i < num_held; i++) record(held[i], held[i].length);
+        num_held = 0;
+    }
+
+    /* handle one token of a file of known format: a weight, a station
+     * name, or a compact record */
+    private void record(byte[] t, int len) {
+        if (format == Format.COMPACT)
+        {
+            int split = compactSplit(t, len);
+            if (split < 0)
+                throw new IllegalArgumentException("expected a compact record such as AB5, found: "
+                                                   + text(t, len));
+            int digits_at = split + charLength(t, split);
+            addEdge(intern(t, 0, split), intern(t, split, digits_at - split),
+                    parseWeight(t, digits_at, len));
+            return;
+        }
+
+        int digits = 0; // length of the trailing run of digits
+        while (digits < len && isDigit(t[len - 1 - digits])) digits++;
+
+        if (digits == len)
+        {
+            if (pending != 2)
+                throw new IllegalArgumentException("weight without two stations: " + text(t, len));
+            addEdge(pending_from, pending_to, parseWeight(t, 0, len));
+            pending = 0;
+        }
+        else if (pending == 0)
+        {
+            pending_from = intern(t, 0, len);
+            pending = 1;
+        }
+        else if (pending == 1)
+        {
+            pending_to = intern(t, 0, len);
+            pending = 2;
+        }
+        else
+        {
+            throw new IllegalArgumentException("expected a weight, found: " + text(t, len));
+        }
+    }
+
+    /* if t[0..len) is two UTF-8 characters (neither a digit) followed by
+     * one or more digits, the offset of the second character; else -1 */
+    private static int compactSplit(byte[] t, int len) {
+        int first = charLength(t, 0);
+        if (first <= 0 || first >= len || isDigit(t[0])) return -1;
+        int second = charLength(t, first);
+        if (second <= 0 || first + second >= len || isDigit(t[first])) return -1;
+        for (int i = first + second; i < len; i++)
+            if (!isDigit(t[i])) return -1;
+        return first;
+    }
+
+    /* number of bytes of the UTF-8 character starting at t[i], or -1 if
+     * no well-formed character starts there */
+    private static int charLength(byte[] t, int i) {
+        int b = t[i] & 0xFF, n;
+        if      (b < 0x80)           n = 1;
+        else if ((b & 0xE0) == 0xC0) n = 2;
+        else if ((b & 0xF0) == 0xE0) n = 3;
+        else if ((b & 0xF8) == 0xF0) n = 4;
+        else                         return -1;
+        if (i + n > t.length) return -1;
+        for (int j = i + 1; j < i + n; j++)
+            if ((t[j] & 0xC0) != 0x80) return -1;
+        return n;
+    }
+
+    private static String text(byte[] t, int len) {
+        return new String(t, 0, len, StandardCharsets.UTF_8);
+    }
+
+    private static int parseWeight(byte[] t, int lo, int hi) {
+        long w = 0;
+        for (int i = lo; i < hi; i++)
+        {
+            w = 10 * w + (t[i] - '0');
+            if (w > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("weight too large: " + text(t, hi));
+        }
+        return (int) w;
+    }
+
+    private void addEdge(int v, int w, int wt) {
+        if (num_edges == from.length)
+        {
+            from = Arrays.copyOf(from, 2 * num_edges);
+            to = Arrays.copyOf(to, 2 * num_edges);
+            weight = Arrays.copyOf(weight, 2 * num_edges);
+        }
+        from[num_edges] = v;
+        to[num_edges] = w;
+        weight[num_edges] = wt;
+        num_edges++;
+    }
+
+    /* return the id of the station named by t[off..off+len), adding it if new */
+    private int intern(byte[] t, int off, int len) {
+        int h = 0x811c9dc5;
+        for (int i = off; i < off + len; i++) h = (h ^ t[i]) * 0x01000193;
+        int mask = table.length - 1;
+        for (int slot = h & mask; ; slot = (slot + 1) & mask)
+        {
+            int id = table[slot];
+            if (id == -1)
+            {
+                table[slot] = id = newName(t, off, len);
+                if (2 * num_names > table.length) rehash();
+                return id;
+            }
+            if (sameName(id, t, off, len)) return id;
+        }
+    }
+
+    private boolean sameName(int id, byte[] t, int off, int len) {
+        int start = name_start[id];
+        int end = id + 1 < num_names ? name_start[id + 1] : name_bytes_used;
+        if (end - start != len) return false;
+        for (int i = 0; i < len; i++)
+            if (name_bytes[start + i] != t[off + i]) return false;
+        return true;
+    }
+
+    private int newName(byte[] t, int off, int len) {
+        if (num_names == names.length)
+        {
+            names = Arrays.copyOf(names, 2 * num_names);
+            name_start = Arrays.copyOf(name_start, 2 * num_names);
+        }
+        while (name_bytes_used + len > name_bytes.length)
+            name_bytes = Arrays.copyOf(name_bytes, 2 * name_bytes.length);
+        System.arraycopy(t, off, name_bytes, name_bytes_used, len);
+        name_start[num_names] = name_bytes_used;
+        name_bytes_used += len;
+        names[num_names] = new String(t, off, len, StandardCharsets.UTF_8);
+        return num_names++;
+    }
+
+    /* double the table and reinsert every name */
+    private void rehash() {
+        table = new int[2 * table.length];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        for (int id = 0; id < num_names; id++)
+        {
+            int start = name_start[id];
+            int end = id + 1 < num_names ? name_start[id + 1] : name_bytes_used;
+            int h = 0x811c9dc5;
+            for (int i = start; i < end; i++) h = (h ^ name_bytes[i]) * 0x01000193;
+            int slot = h & mask;
+            while (table[slot] != -1) slot = (slot + 1) & mask;
+            table[slot] = id;
+        }
+    }
+
+    // test method
+    public static void main(String[] args) throws IOException {
+        String filename = args.length > 0 ? args[0] : "input.txt";
+        Format format = args.length > 1 ? Format.valueOf(args[1].toUpperCase()) : Format.AUTO;
+        long start = System.nanoTime();
+        TrainsCSR G = loadSnapshot(filename, format);
+        long end = System.nanoTime();
+        System.out.print(G);
+        System.out.printf("loaded %d vertices and %d edges in %.3f s%n",
+                          G.V(), G.E(), (end - start) / 1e9);
+    }
+}
@@ -0,0 +1,280 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsKSP.java
+ *  Execution:    java TrainsKSP
+ *  Dependencies: TrainsGraph.java, Route.java, IndexMinIntPQ.java
+ *                TrainsDigraph.java, DirectedEdge.java, TrainsSP.java
+ *
+ *  The k shortest loopless routes between two stations, in order of
+ *  distance (Yen's algorithm). Each new route deviates from an earlier one
+ *  at some spur station: it keeps the earlier route's prefix (the root) up
+ *  to the spur, then follows the shortest spur path to the destination
+ *  that avoids the root's stations and the edges the routes found so far
+ *  take out of the same root. Only the spur stations at or after the
+ *  point where a route itself deviated are tried (Lawler's refinement).
+ *
+ *  One reverse shortest path tree towards the destination is built first
+ *  and shared by every spur search as an exact A* heuristic; removing
+ *  stations and edges only makes paths longer, so it never overestimates
+ *  and most spur searches walk almost straight to the destination. The
+ *  search arrays are stamped rather than cleared, so a spur search costs
+ *  time proportional to what it visits, not to the size of the network.
+ *
+ *  When source and destination are the same station the routes are the
+ *  shortest cycles through it that visit no other station twice.
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+public class TrainsKSP {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private final TrainsGraph G;
+    private final int s, t;
+    private final List<Route> routes = new ArrayList<Route>();
+    private int spur_searches;          // number of spur searches run
+
+    /* shared reverse tree: to_dest[v] = distance from v to the destination */
+    private int[] to_dest;
+
+    /* spur search state; a slot is valid only when its stamp is current */
+    private int[] dist, edge_to, seen, blocked;
+    private int stamp = 0;
+    private IndexMinIntPQ pq;
+
+    /* a route as a sequence of edges, with the position where it deviated
+     * from the route it was derived from */
+    private static final class Path implements Comparable<Path> {
+        final int[] edges;
+        final int distance, deviation;
+
+        Path(int[] edges, int distance, int deviation) {
+            this.edges = edges;
+            this.distance = distance;
+            this.deviation = deviation;
+        }
+
+        public int compareTo(Path that) {
+            if (distance != that.distance) return Integer.compare(distance, that.distance);
+            return Integer.compare(edges.length, that.edges.length);
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Path && Arrays.equals(edges, ((Path) other).edges);
+        }
+
+        public int hashCode() {
+            return Arrays.hashCode(edges);
+        }
+    }
+
+    /* find the k shortest loopless routes from source to dest */
+    public TrainsKSP(TrainsGraph G, String source, String dest, int k) {
+        if (k < 1) throw new IllegalArgumentException("k must be at least 1");
+        this.G = G;
+        s = index(source);
+        t = index(dest);
+        int V = G.V();
+        dist = new int[V];
+        edge_to = new int[V];
+        seen = new int[V];
+        blocked = new int[V];
+        pq = new IndexMinIntPQ(V);
+        reverseTree();
+
+        List<Path> found = new ArrayList<Path>();
+        PriorityQueue<Path> candidates = new PriorityQueue<Path>();
+        Set<Path> known = new HashSet<Path>();
+
+        Path first = spur(new int[0], 0, s, new int[0], 0);
+        if (first == null) return;
+        found.add(first);
+        known.add(first);
+
+        while (found.size() < k)
+        {
+            Path last = found.get(found.size() - 1);
+            int root_dist = 0;
+            for (int i = 0; i < last.deviation; i++) root_dist += G.outWeight(last.edges[i]);
+            for (int i = last.deviation; i < last.edges.length; i++)
+            {
+                int spur_vertex = G.outFrom(last.edges[i]);
+
+                // edges out of the spur taken by found routes with the same root
+                int[] removed = new int[found.size()];
+                int num_removed = 0;
+                for (Path p : found)
+                {
+                    if (p.edges.length > i && sameRoot(p, last, i))
+                        removed[num_removed++] = p.edges[i];
+                }
+
+                Path candidate = spur(last.edges, i, spur_vertex, removed, num_removed);
+                if (candidate != null)
+                {
+                    Path full = new Path(candidate.edges, root_dist + candidate.distance, i);
+                    if (known.add(full)) candidates.add(full);
+                }
+                root_dist += G.outWeight(last.edges[i]);
+            }
+            Path next = candidates.poll();
+            if (next == null) break;
+            found.add(next);
+        }
+
+        for (Path p : found) routes.add(toRoute(p));
+    }
+
+    /* return the id of vertex V in the snapshot */
+    private int index(String V) {
+        int v = G.indexOf(V);
+        if (v < 0) throw new IllegalArgumentException("no such vertex: " + V);
+        return v;
+    }
+
+    /* do p and q take the same first i edges? */
+    private static boolean sameRoot(Path p, Path q, int i) {
+        for (int j = 0; j < i; j++)
+            if (p.edges[j] != q.edges[j]) return false;
+        return true;
+    }
+
+    /* Dijkstra from the destination over the incoming edges */
+    private void reverseTree() {
+        int V = G.V();
+        to_dest = new int[V];
+        Arrays.fill(to_dest, INFINITY);
+        to_dest[t] = 0;
+        pq.clear();
+        pq.insert(t, 0);
+        while (!pq.isEmpty())
+        {
+            int v = pq.delMin();
+            for (int i = G.inBegin(v); i < G.inEnd(v); i++)
+            {
+                int u = G.inFrom(i), d = to_dest[v] + G.inWeight(i);
+                if (d < to_dest[u])
+                {
+                    to_dest[u] = d;
+                    if (pq.contains(u)) pq.decreaseKey(u, d);
+                    else                pq.insert(u, d);
+                }
+            }
+        }
+    }
+
+    /* the root root_edges[0..i) followed by the shortest path from spur_vertex
+     * to t that avoids the root's stations and the removed edges; its
+     * distance is that of the spur part only. null if there is none */
+    private Path spur(int[] root_edges, int i, int spur_vertex, int[] removed, int num_removed) {
+        spur_searches++;
+        if (++stamp == 0)
+        {
+            Arrays.fill(seen, 0);
+            Arrays.fill(blocked, 0);
+            stamp = 1;
+        }
+        // the root's stations may not be visited again, the spur included;
+        // only the destination may close a cycle when it is also the source
+        blocked[spur_vertex] = stamp;
+        for (int j = 0; j < i; j++) blocked[G.outFrom(root_edges[j])] = stamp;
+
+        pq.clear();
+        for (int e = G.outBegin(spur_vertex); e < G.outEnd(spur_vertex); e++)
+        {
+            if (isRemoved(e, removed, num_removed)) continue;
+            reach(e, G.outWeight(e));
+        }
+        while (!pq.isEmpty())
+        {
+            int v = pq.delMin();
+            if (v == t) break;
+            for (int e = G.outBegin(v); e < G.outEnd(v); e++)
+                reach(e, dist[v] + G.outWeight(e));
+        }
+        if (seen[t] != stamp) return null;
+
+        // walk the tree back from t to the spur
+        int n = 0;
+        for (int v = t, e = edge_to[t]; ; e = edge_to[v])
+        {
+            n++;
+            v = G.outFrom(e);
+            if (v == spur_vertex) break;
+        }
+        int[] edges = Arrays.copyOf(root_edges, i + n);
+        int v = t;
+        for (int j = i + n - 1; j >= i; j--)
+        {
+            edges[j] = edge_to[v];
+            v = G.outFrom(edges[j]);
+        }
+        return new Path(edges, dist[t], i);
+    }
+
+    private static boolean isRemoved(int e, int[] removed, int num_removed) {
+        for (int j = 0; j < num_removed; j++)
+            if (removed[j] == e) return true;
+        return false;
+    }
+
+    /* offer distance d to the head of edge e during a spur search */
+    private void reach(int e, int d) {
+        int w = G.outTo(e);
+        if (w != t && blocked[w] == stamp) return;
+        if (to_dest[w] == INFINITY) return;          // cannot lead to the destination
+        if (seen[w] == stamp && dist[w] <= d) return;
+        if (seen[w] == stamp && !pq.contains(w)) return; // already settled
+        seen[w] = stamp;
+        dist[w] = d;
+        edge_to[w] = e;
+        if (pq.contains(w)) pq.decreaseKey(w, d + to_dest[w]);
+        else                pq.insert(w, d + to_dest[w]);
+    }
+
+    private Route toRoute(Path p) {
+        int[] path = new int[p.edges.length + 1];
+        path[0] = s;
+        for (int j = 0; j < p.edges.length; j++) path[j + 1] = G.outTo(p.edges[j]);
+        return new Route(G, path, path.length, p.distance);
+    }
+
+    /* the routes found, shortest first; fewer than k if no more exist */
+    public List<Route> routes() {
+        return routes;
+    }
+
+    /* number of spur searches run */
+    public int getSpurSearches() {
+        return spur_searches;
+    }
+
+    // test method
+    public static void main(String[] args) {
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        TrainsCSR csr = G.snapshot();
+        String[][] queries = { {"A", "C"}, {"B", "B"}, {"C", "A"} };
+        for (String[] q : queries) {
+            TrainsKSP ksp = new TrainsKSP(csr, q[0], q[1], 5);
+            TrainsSP sp = new TrainsSP(csr, q[0], q[1]);
+            if (!sp.hasPathTo(q[1])) {
+                System.out.println(q[0] + " to " + q[1] + ": NO SUCH ROUTE");
+                continue;
+            }
+            System.out.println(q[0] + " to " + q[1] + " (shortest " + sp.distTo(q[1]) + "):");
+            for (Route r : ksp.routes()) {
+                System.out.println("  " + r + "  " + r.distance());
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsLandmarks.java
+ *  Execution:    java TrainsLandmarks
+ *  Dependencies: TrainsGraph.java, IndexMinIntPQ.java, TrainsDigraph.java
+ *                DirectedEdge.java
+ *
+ *  Landmark distances for A* search with the triangle inequality (ALT).
+ *  For each of k landmark stations L the shortest distances from L to
+ *  every station and from every station to L are precomputed, forward
+ *  over the outgoing edges and backward over the incoming ones. Then for
+ *  any stations v and t
+ *
+ *      d(v,t) >= d(L,t) - d(L,v)    and    d(v,t) >= d(v,L) - d(t,L)
+ *
+ *  and the largest of these bounds is a consistent A* heuristic. The
+ *  landmarks are chosen greedily, each as far as possible from the ones
+ *  already picked. The tables take 2kV ints.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+
+public class TrainsLandmarks {
+
+    public static final int INFINITY = Integer.MAX_VALUE;
+    private final TrainsGraph G;
+    private final int num_vertices, k;
+    private final int[] landmarks;   // vertex ids of the landmarks
+    private final int[] from;        // from[l*V + v] = d(landmark l, v)
+    private final int[] to;          // to[l*V + v]   = d(v, landmark l)
+
+    /* choose k landmarks of G and compute their distance tables */
+    public TrainsLandmarks(TrainsGraph G, int k) {
+        if (k < 1) throw new IllegalArgumentException("need at least one landmark");
+        this.G = G;
+        num_vertices = G.V();
+        this.k = Math.min(k, num_vertices);
+        int V = num_vertices;
+        landmarks = new int[this.k];
+        from = new int[this.k * V];
+        to = new int[this.k * V];
+
+        IndexMinIntPQ pq = new IndexMinIntPQ(V);
+        int[] dist = new int[V];
+        int[] nearest = new int[V];   // distance from the closest landmark so far
+        Arrays.fill(nearest, INFINITY);
+        int next = 0;
+        for (int l = 0; l < this.k; l++)
+        {
+            landmarks[l] = next;
+            search(next, true, pq, dist);
+            System.arraycopy(dist, 0, from, l * V, V);
+            search(next, false, pq, dist);
+            System.arraycopy(dist, 0, to, l * V, V);
+
+            // the next landmark is the station farthest from all chosen ones
+            int best = -1;
+            for (int v = 0; v < V; v++)
+            {
+                nearest[v] = Math.min(nearest[v], from[l * V + v]);
+                if (nearest[v] == 0) continue;
+                if (best < 0 || nearest[v] > nearest[best]) best = v;
+            }
+            if (best < 0) break;
+            next = best;
+        }
+    }
+
+    /* Dijkstra from s over the outgoing (forward) or incoming edges */
+    private void search(int s, boolean forward, IndexMinIntPQ pq, int[] dist) {
+        Arrays.fill(dist, INFINITY);
+        pq.clear();
+        dist[s] = 0;
+        pq.insert(s, 0);
+        while (!pq.isEmpty())
+        {
+            int v = pq.delMin();
+            int begin = forward ? G.outBegin(v) : G.inBegin(v);
+            int end = forward ? G.outEnd(v) : G.inEnd(v);
+            for (int i = begin; i < end; i++)
+            {
+                int w = forward ? G.outTo(i) : G.inFrom(i);
+                int d = dist[v] + (forward ? G.outWeight(i) : G.inWeight(i));
+                if (d < dist[w])
+                {
+                    dist[w] = d;
+                    if (pq.contains(w)) pq.decreaseKey(w, d);
+                    else                pq.insert(w, d);
+                }
+            }
+        }
+    }
+
+    /* the graph the tables were computed on */
+    public TrainsGraph graph() {
+        return G;
+    }
+
+    /* number of landmarks */
+    public int size() {
+        return k;
+    }
+
+    /* vertex id of landmark l */
+    public int landmark(int l) {
+        return landmarks[l];
+    }
+
+    /* lower bound on the distance from v to t; INFINITY when the tables
+     * prove that t cannot be reached from v */
+    public int lowerBound(int v, int t) {
+        int V = num_vertices, bound = 0;
+        for (int l = 0; l < k; l++)
+        {
+            int lv = from[l * V + v], lt = from[l * V + t];
+            int vl = to[l * V + v], tl = to[l * V + t];
+            if (lv < INFINITY)
+            {
+                if (lt == INFINITY) return INFINITY;    // L reaches v but not t
+                bound = Math.max(bound, lt - lv);
+            }
+            if (tl < INFINITY)
+            {
+                if (vl == INFINITY) return INFINITY;    // t reaches L but v does not
+                bound = Math.max(bound, vl - tl);
+            }
+        }
+        return bound;
+    }
+
+    // test method
+    public static void main(String[] args) {
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        TrainsCSR csr = G.snapshot();
+        TrainsLandmarks lm = new TrainsLandmarks(csr, 2);
+        for (int l = 0; l < lm.size(); l++) {
+            System.out.println("landmark " + l + ": " + csr.nameOf(lm.landmark(l)));
+        }
+        for (int v = 0; v < csr.V(); v++) {
+            System.out.print(csr.nameOf(v) + " to C >= " + lm.lowerBound(v, csr.indexOf("C")) + "   ");
+        }
+        System.out.println();
+    }
+}
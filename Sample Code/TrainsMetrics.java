@@ -0,0 +1,223 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsMetrics.java
+ *  Execution:    java TrainsMetrics
+ *  Dependencies: TrainsMetricsMBean.java, TrainsSP.java, TrainsBFS.java
+ *                TrainsDigraph.java, DirectedEdge.java
+ *
+ *  Per-query search metrics for TrainsSP and TrainsBFS. Each query type
+ *  has a wall time histogram with power-of-two buckets, and up to three
+ *  search counters (such as vertices settled or paths enqueued) whose
+ *  totals and maxima are kept. Recording a query is a handful of LongAdder
+ *  and LongAccumulator updates with no locking or allocation, cheap enough
+ *  to leave on under load. The same numbers can be read through JMX after
+ *  registerMBean().
+ *
+ *************************************************************************/
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class TrainsMetrics implements TrainsMetricsMBean
+{
+    private static final int BUCKETS = 64;   // bucket b holds times in [2^(b-1), 2^b) ns
+    private static final TrainsMetrics INSTANCE = new TrainsMetrics();
+    private static final Map<String, QueryType> types = new LinkedHashMap<String, QueryType>();
+    private static volatile boolean enabled = true;
+
+    public static final QueryType SHORTEST_PATH =
+        type("shortest-path", "settled", "relaxed", "decreaseKey");
+    public static final QueryType ROUND_TRIP =
+        type("round-trip", "settled", "relaxed", "decreaseKey");
+    public static final QueryType POINT_TO_POINT =
+        type("point-to-point", "settled", "relaxed", "decreaseKey");
+    public static final QueryType BFS =
+        type("bfs", "enqueued", "peakFrontier", "pruned");
+
+    /* statistics of one kind of query */
+    public static final class QueryType
+    {
+        private final String name;
+        private final String[] counters;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total_nanos = new LongAdder();
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+        private final LongAdder[] totals;
+        private final LongAccumulator[] maxima;
+
+        private QueryType(String name, String[] counters)
+        {
+            this.name = name;
+            this.counters = counters;
+            totals = new LongAdder[counters.length];
+            maxima = new LongAccumulator[counters.length];
+            for (int b = 0; b < BUCKETS; b++) histogram[b] = new LongAdder();
+            for (int c = 0; c < counters.length; c++)
+            {
+                totals[c] = new LongAdder();
+                maxima[c] = new LongAccumulator(Math::max, 0);
+            }
+        }
+
+        public String name() { return name; }
+
+        /* record one query with its wall time and counter values */
+        public void record(long nanos, long a, long b, long c)
+        {
+            if (!enabled) return;
+            count.increment();
+            total_nanos.add(nanos);
+            histogram[BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 1))].increment();
+            if (counters.length > 0) { totals[0].add(a); maxima[0].accumulate(a); }
+            if (counters.length > 1) { totals[1].add(b); maxima[1].accumulate(b); }
+            if (counters.length > 2) { totals[2].add(c); maxima[2].accumulate(c); }
+        }
+
+        public long count() { return count.sum(); }
+
+        public double meanMicros()
+        {
+            long n = count.sum();
+            return n == 0 ? 0 : total_nanos.sum() / 1e3 / n;
+        }
+
+        /* upper bound of the bucket that holds the p-th fraction of times */
+        public double percentileMicros(double p)
+        {
+            long n = count.sum(), seen = 0;
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(p * n);
+            for (int b = 0; b < BUCKETS; b++)
+            {
+                seen += histogram[b].sum();
+                if (seen >= rank) return Math.scalb(1.0, b) / 1e3;
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+
+        private int counter(String counter)
+        {
+            for (int c = 0; c < counters.length; c++)
+                if (counters[c].equals(counter)) return c;
+            throw new IllegalArgumentException("no counter " + counter + " for " + name);
+        }
+
+        public long counterTotal(String counter) { return totals[counter(counter)].sum();  }
+        public long counterMax(String counter)   { return maxima[counter(counter)].get();  }
+
+        private void reset()
+        {
+            count.reset();
+            total_nanos.reset();
+            for (LongAdder h : histogram) h.reset();
+            for (int c = 0; c < counters.length; c++)
+            {
+                totals[c].reset();
+                maxima[c].reset();
+            }
+        }
+
+        public String toString()
+        {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format("%-14s %8d queries  mean %9.1f us  p50 %9.1f us  p99 %9.1f us",
+                                   name, count(), meanMicros(), percentileMicros(0.5),
+                                   percentileMicros(0.99)));
+            for (int c = 0; c < counters.length; c++)
+            {
+                long n = count();
+                s.append(String.format("  %s %.1f avg/%d max", counters[c],
+                                       n == 0 ? 0.0 : (double) totals[c].sum() / n, maxima[c].get()));
+            }
+            return s.toString();
+        }
+    }
+
+    /* declare a query type with up to three counters */
+    public static synchronized QueryType type(String name, String... counters)
+    {
+        if (counters.length > 3) throw new IllegalArgumentException("at most three counters");
+        QueryType type = types.get(name);
+        if (type == null)
+        {
+            type = new QueryType(name, counters);
+            types.put(name, type);
+        }
+        return type;
+    }
+
+    private static synchronized QueryType lookup(String name)
+    {
+        QueryType type = types.get(name);
+        if (type == null) throw new IllegalArgumentException("no query type " + name);
+        return type;
+    }
+
+    /* the metrics instance that is exposed through JMX */
+    public static TrainsMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /* register the metrics with the platform MBean server */
+    public static void registerMBean() throws JMException
+    {
+        ObjectName name = new ObjectName("trains:type=Metrics");
+        if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+    }
+
+    /* one line per query type */
+    public static synchronized String report()
+    {
+        StringBuilder s = new StringBuilder();
+        for (QueryType type : types.values()) s.append(type).append('\n');
+        return s.toString();
+    }
+
+    public synchronized String[] getQueryTypes()
+    {
+        return types.keySet().toArray(new String[types.size()]);
+    }
+
+    public long getCount(String type)                      { return lookup(type).count();               }
+    public double getMeanMicros(String type)               { return lookup(type).meanMicros();          }
+    public double getPercentileMicros(String type, double p) { return lookup(type).percentileMicros(p); }
+    public long getCounterTotal(String type, String counter) { return lookup(type).counterTotal(counter); }
+    public long getCounterMax(String type, String counter)   { return lookup(type).counterMax(counter);   }
+    public boolean isEnabled()                             { return enabled;                            }
+    public void setEnabled(boolean on)                     { enabled = on;                              }
+
+    public synchronized void reset()
+    {
+        for (QueryType type : types.values()) type.reset();
+    }
+
+    // test method
+    public static void main(String[] args) throws JMException {
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        registerMBean();
+        for (int i = 0; i < 1000; i++) {
+            new TrainsSP(G, "A", "C");
+            new TrainsSP(G, "B", "B");
+            new TrainsBFS(G, "C", "C", 10);
+        }
+        TrainsSP sp = new TrainsSP(G, "A", "C");
+        System.out.println("last query: settled " + sp.getSettledCount() + ", relaxed "
+                           + sp.getRelaxedCount() + ", decreaseKey " + sp.getDecreaseKeyCount());
+        System.out.print(report());
+        ObjectName name = new ObjectName("trains:type=Metrics");
+        Object bfs = ManagementFactory.getPlatformMBeanServer().invoke(
+            name, "getCount", new Object[] { "bfs" }, new String[] { String.class.getName() });
+        System.out.println("bfs queries seen through JMX: " + bfs);
+    }
+}
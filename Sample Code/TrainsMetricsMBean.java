@@ -0,0 +1,36 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsMetricsMBean.java
+ *  Dependencies: none
+ *
+ *  JMX management interface of TrainsMetrics. Times are in microseconds.
+ *
+ *************************************************************************/
+
+public interface TrainsMetricsMBean
+{
+    /* names of the query types that are recorded */
+    String[] getQueryTypes();
+
+    /* number of queries of a type recorded since the last reset */
+    long getCount(String type);
+
+    /* mean wall time of a query type */
+    double getMeanMicros(String type);
+
+    /* upper bound of the wall time below which the fraction p of queries fall */
+    double getPercentileMicros(String type, double p);
+
+    /* sum of a search counter over all queries of a type */
+    long getCounterTotal(String type, String counter);
+
+    /* largest value of a search counter in a single query of a type */
+    long getCounterMax(String type, String counter);
+
+    /* is recording switched on? */
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /* clear every statistic */
+    void reset();
+}
@@ -0,0 +1,101 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsNetworkGenerator.java
+ *  Execution:    java TrainsNetworkGenerator V degree min_weight max_weight
+ *                                           [uniform|powerlaw] [seed] > net.txt
+ *  Dependencies: TrainsDigraph.java, DirectedEdge.java
+ *
+ *  Generates synthetic rail networks for benchmarking. Stations are joined
+ *  in a ring, so every station can reach every other, and each station
+ *  then gets extra outgoing edges to random stations: the same number for
+ *  all stations (uniform) or a heavy-tailed number with the same mean
+ *  (powerlaw, a few hub stations and many small ones). Weights are drawn
+ *  uniformly from [min_weight, max_weight]. Stations are named A..Z, then
+ *  AA, AB, ... like spreadsheet columns: letters only, so a name is never
+ *  mistaken for a weight or a compact AB5 record, and never contains the
+ *  '-' of a route string. Networks of any size can be generated.
+ *
+ *************************************************************************/
+
+import java.util.Random;
+
+public class TrainsNetworkGenerator {
+
+    private final int num_vertices, min_weight, max_weight;
+    private final double degree;     // mean number of outgoing edges per station
+    private final boolean power_law; // heavy-tailed out-degrees
+    private final Random random;
+
+    /* a generator for networks of V stations with the given mean out-degree */
+    public TrainsNetworkGenerator(int V, double degree, int min_weight, int max_weight,
+                                  boolean power_law, long seed) {
+        if (V < 2) throw new IllegalArgumentException("vertex count must be at least 2");
+        if (degree < 1) throw new IllegalArgumentException("mean degree must be at least 1");
+        if (min_weight < 1 || max_weight < min_weight)
+            throw new IllegalArgumentException("bad weight range");
+        this.num_vertices = V;
+        this.degree = degree;
+        this.min_weight = min_weight;
+        this.max_weight = max_weight;
+        this.power_law = power_law;
+        this.random = new Random(seed);
+    }
+
+    /* name of station i: i in bijective base 26, A..Z, AA..ZZ, AAA.. */
+    public static String name(int i) {
+        char[] letters = new char[7];
+        int n = letters.length;
+        for (long x = i + 1L; x > 0; x = (x - 1) / 26)
+            letters[--n] = (char) ('A' + (x - 1) % 26);
+        return new String(letters, n, letters.length - n);
+    }
+
+    private int weight() {
+        return min_weight + random.nextInt(max_weight - min_weight + 1);
+    }
+
+    /* number of extra edges out of one station, with mean degree - 1 */
+    private int extraEdges() {
+        double mean = degree - 1;
+        if (!power_law)
+        {
+            int n = (int) mean;
+            return random.nextDouble() < mean - n ? n + 1 : n;
+        }
+        // Pareto with shape 2 has mean 2 * x_min
+        double x = (mean / 2) / Math.sqrt(1 - random.nextDouble());
+        return (int) Math.min(Math.round(x), num_vertices - 1);
+    }
+
+    /* generate a new network */
+    public TrainsDigraph generate() {
+        TrainsDigraph G = new TrainsDigraph(num_vertices);
+        for (int v = 0; v < num_vertices; v++)
+        {
+            G.addEdge(new DirectedEdge(name(v), name((v + 1) % num_vertices), weight()));
+            for (int k = extraEdges(); k > 0; k--)
+            {
+                int w = random.nextInt(num_vertices - 1);
+                if (w >= v) w++; // no self loops
+                G.addEdge(new DirectedEdge(name(v), name(w), weight()));
+            }
+        }
+        return G;
+    }
+
+    // write a generated network in FROM,TO,WEIGHT form
+    public static void main(String[] args) {
+        int V = Integer.parseInt(args[0]);
+        double degree = Double.parseDouble(args[1]);
+        int min_weight = Integer.parseInt(args[2]), max_weight = Integer.parseInt(args[3]);
+        boolean power_law = args.length > 4 && args[4].equals("powerlaw");
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+        TrainsCSR G = new TrainsNetworkGenerator(V, degree, min_weight, max_weight,
+                                                 power_law, seed).generate().snapshot();
+        StringBuilder s = new StringBuilder();
+        for (int e = 0; e < G.E(); e++) {
+            s.append(G.nameOf(G.outFrom(e))).append(',').append(G.nameOf(G.outTo(e)))
+             .append(',').append(G.outWeight(e)).append('\n');
+        }
+        System.out.print(s);
+    }
+}
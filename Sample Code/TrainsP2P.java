@@ -0,0 +1,293 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsP2P.java
+ *  Execution:    java TrainsP2P
+ *  Dependencies: TrainsGraph.java, TrainsLandmarks.java, TrainsSP.java
+ *                IndexMinIntPQ.java, TrainsMetrics.java, TrainsDigraph.java
+ *                DirectedEdge.java
+ *
+ *  Point-to-point shortest path between one source and one destination.
+ *  Unlike TrainsSP, which builds the whole shortest path tree, the search
+ *  stops as soon as the destination's distance is known. Three modes:
+ *
+ *      EARLY_EXIT     Dijkstra from the source, stopping when the
+ *                     destination is settled
+ *      BIDIRECTIONAL  Dijkstra forward from the source over the outgoing
+ *                     edges and backward from the destination over the
+ *                     incoming edges, always advancing the side with the
+ *                     smaller key, until the two minimum keys add up to
+ *                     the best meeting distance found
+ *      ALT            A* from the source, keyed on distance plus the
+ *                     landmark lower bound to the destination
+ *
+ *  Distances and paths are the same as TrainsSP's. A round trip (source
+ *  equal to destination) is handed to TrainsSP, which already stops when
+ *  the source is settled again.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+public class TrainsP2P {
+
+    public enum Mode { EARLY_EXIT, BIDIRECTIONAL, ALT }
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private final TrainsGraph G;
+    private final String source, dest;
+    private final int s, t;             // vertex ids of source and destination
+    private final TrainsLandmarks landmarks;
+    private int[] dist_f, edge_f;       // forward labels; edge_f[v] = last edge into v
+    private int[] dist_b, edge_b;       // backward labels; edge_b[v] = first edge out of v
+    private int distance = INFINITY;    // shortest distance from s to t
+    private int meet_edge = -1;         // edge joining the two searches, -1 if one-sided
+    private TrainsSP round_trip;        // answers the query when s == t
+    private int settled, relaxed, decreased; // search counters
+    private long elapsed_nanos;         // wall time of the search
+
+    /* bidirectional search from source to dest on a frozen snapshot */
+    public TrainsP2P(TrainsGraph G, String source, String dest) {
+        this(G, source, dest, Mode.BIDIRECTIONAL, null);
+    }
+
+    /* search from source to dest in the given mode; ALT mode needs
+     * landmarks, so use the constructor that takes them */
+    public TrainsP2P(TrainsGraph G, String source, String dest, Mode mode) {
+        this(G, source, dest, mode, null);
+    }
+
+    /* A* search from source to dest guided by the landmarks */
+    public TrainsP2P(TrainsGraph G, String source, String dest, TrainsLandmarks landmarks) {
+        this(G, source, dest, Mode.ALT, landmarks);
+    }
+
+    private TrainsP2P(TrainsGraph G, String source, String dest, Mode mode,
+                      TrainsLandmarks landmarks) {
+        if (mode == Mode.ALT && landmarks == null)
+            throw new IllegalArgumentException("ALT mode needs landmarks");
+        if (landmarks != null && landmarks.graph() != G)
+            throw new IllegalArgumentException("landmarks belong to another snapshot");
+        this.G = G;
+        this.source = source;
+        this.dest = dest;
+        this.landmarks = landmarks;
+        s = index(source);
+        t = index(dest);
+
+        long start = System.nanoTime();
+        if (s == t)
+        {
+            round_trip = new TrainsSP(G, source, dest);
+            settled = round_trip.getSettledCount();
+            relaxed = round_trip.getRelaxedCount();
+            decreased = round_trip.getDecreaseKeyCount();
+            elapsed_nanos = round_trip.getElapsedNanos();
+            return;
+        }
+        if (mode == Mode.BIDIRECTIONAL) bidirectional();
+        else                            forward();
+        elapsed_nanos = System.nanoTime() - start;
+        TrainsMetrics.POINT_TO_POINT.record(elapsed_nanos, settled, relaxed, decreased);
+    }
+
+    /* return the id of vertex V in the snapshot being searched */
+    private int index(String V) {
+        int v = G.indexOf(V);
+        if (v < 0) throw new IllegalArgumentException("no such vertex: " + V);
+        return v;
+    }
+
+    /* lower bound on the distance from v to t; 0 without landmarks */
+    private int bound(int v) {
+        return landmarks == null ? 0 : landmarks.lowerBound(v, t);
+    }
+
+    /* Dijkstra (or A*, with landmarks) from s, stopping when t is settled */
+    private void forward() {
+        int V = G.V();
+        dist_f = new int[V];
+        edge_f = new int[V];
+        Arrays.fill(dist_f, INFINITY);
+        Arrays.fill(edge_f, -1);
+        IndexMinIntPQ pq = new IndexMinIntPQ(V);
+
+        int h = bound(s);
+        if (h == INFINITY) return;
+        dist_f[s] = 0;
+        pq.insert(s, h);
+        while (!pq.isEmpty())
+        {
+            int v = pq.delMin();
+            settled++;
+            if (v == t) break;
+            for (int e = G.outBegin(v); e < G.outEnd(v); e++)
+            {
+                relaxed++;
+                int w = G.outTo(e), d = dist_f[v] + G.outWeight(e);
+                if (d >= dist_f[w]) continue;
+                int hw = bound(w);
+                if (hw == INFINITY) continue;   // t is unreachable from w
+                dist_f[w] = d;
+                edge_f[w] = e;
+                if (pq.contains(w)) { pq.decreaseKey(w, d + hw); decreased++; }
+                else                pq.insert(w, d + hw);
+            }
+        }
+        distance = dist_f[t];
+    }
+
+    /* Dijkstra from both ends until the frontiers prove the best meeting */
+    private void bidirectional() {
+        int V = G.V();
+        dist_f = new int[V];
+        edge_f = new int[V];
+        dist_b = new int[V];
+        edge_b = new int[V];
+        Arrays.fill(dist_f, INFINITY);
+        Arrays.fill(edge_f, -1);
+        Arrays.fill(dist_b, INFINITY);
+        Arrays.fill(edge_b, -1);
+        IndexMinIntPQ pq_f = new IndexMinIntPQ(V), pq_b = new IndexMinIntPQ(V);
+
+        dist_f[s] = 0;
+        pq_f.insert(s, 0);
+        dist_b[t] = 0;
+        pq_b.insert(t, 0);
+        while (!pq_f.isEmpty() && !pq_b.isEmpty())
+        {
+            int top_f = pq_f.minKey(), top_b = pq_b.minKey();
+            if ((long) top_f + top_b >= distance) break;    // no shorter meeting left
+            if (top_f <= top_b)
+            {
+                int v = pq_f.delMin();
+                settled++;
+                for (int e = G.outBegin(v); e < G.outEnd(v); e++)
+                {
+                    relaxed++;
+                    int w = G.outTo(e), d = dist_f[v] + G.outWeight(e);
+                    if (d < dist_f[w])
+                    {
+                        dist_f[w] = d;
+                        edge_f[w] = e;
+                        if (pq_f.contains(w)) { pq_f.decreaseKey(w, d); decreased++; }
+                        else                  pq_f.insert(w, d);
+                    }
+                    if (dist_b[w] < INFINITY && (long) d + dist_b[w] < distance)
+                    {
+                        distance = d + dist_b[w];
+                        meet_edge = e;
+                    }
+                }
+            }
+            else
+            {
+                int v = pq_b.delMin();
+                settled++;
+                for (int i = G.inBegin(v); i < G.inEnd(v); i++)
+                {
+                    relaxed++;
+                    int u = G.inFrom(i), d = dist_b[v] + G.inWeight(i);
+                    if (d < dist_b[u])
+                    {
+                        dist_b[u] = d;
+                        edge_b[u] = G.inEdge(i);
+                        if (pq_b.contains(u)) { pq_b.decreaseKey(u, d); decreased++; }
+                        else                  pq_b.insert(u, d);
+                    }
+                    if (dist_f[u] < INFINITY && (long) dist_f[u] + d < distance)
+                    {
+                        distance = dist_f[u] + d;
+                        meet_edge = G.inEdge(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /* V must be the destination this query was run for */
+    private void checkDest(String V) {
+        if (!V.equals(dest))
+            throw new IllegalArgumentException("not the destination of this query: " + V);
+    }
+
+    /* length of the shortest path from source to the destination V */
+    public double distTo(String V) {
+        checkDest(V);
+        if (round_trip != null) return round_trip.distTo(V);
+        return distance;
+    }
+
+    /* is there a path from source to the destination V? */
+    public boolean hasPathTo(String V) {
+        checkDest(V);
+        if (round_trip != null) return round_trip.hasPathTo(V);
+        return distance < INFINITY;
+    }
+
+    /* shortest path from source to the destination V, null if none */
+    public Iterable<DirectedEdge> pathTo(String V) {
+        checkDest(V);
+        if (round_trip != null) return round_trip.pathTo(V);
+        if (distance == INFINITY) return null;
+        LinkedList<DirectedEdge> path = new LinkedList<DirectedEdge>();
+        int v = t;
+        if (meet_edge != -1)
+        {
+            // the backward half, from the meeting edge on to t
+            for (int w = G.outTo(meet_edge); w != t; w = G.outTo(edge_b[w]))
+                path.add(G.edge(edge_b[w]));
+            path.push(G.edge(meet_edge));
+            v = G.outFrom(meet_edge);
+        }
+        for (; v != s; v = G.outFrom(edge_f[v]))
+            path.push(G.edge(edge_f[v]));
+        return path;
+    }
+
+    /* number of vertices taken off the priority queues */
+    public int getSettledCount() {
+        return settled;
+    }
+
+    /* number of edges relaxed */
+    public int getRelaxedCount() {
+        return relaxed;
+    }
+
+    /* number of decreaseKey calls on the priority queues */
+    public int getDecreaseKeyCount() {
+        return decreased;
+    }
+
+    /* wall time of the search in nanoseconds */
+    public long getElapsedNanos() {
+        return elapsed_nanos;
+    }
+
+    // test method
+    public static void main(String[] args) {
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        TrainsCSR csr = G.snapshot();
+        TrainsLandmarks landmarks = new TrainsLandmarks(csr, 2);
+        String[][] queries = { {"A", "C"}, {"B", "B"}, {"A", "D"}, {"D", "A"} };
+        for (String[] q : queries) {
+            TrainsSP sp = new TrainsSP(csr, q[0], q[1]);
+            System.out.println(q[0] + " to " + q[1] + " tree:          " + sp.pathTo(q[1])
+                               + " " + sp.distTo(q[1]) + " settled " + sp.getSettledCount());
+            TrainsP2P[] p2p = { new TrainsP2P(csr, q[0], q[1], Mode.EARLY_EXIT),
+                                new TrainsP2P(csr, q[0], q[1], Mode.BIDIRECTIONAL),
+                                new TrainsP2P(csr, q[0], q[1], landmarks) };
+            String[] names = { "early exit:   ", "bidirectional:", "ALT:          " };
+            for (int m = 0; m < p2p.length; m++) {
+                System.out.println(q[0] + " to " + q[1] + " " + names[m] + " "
+                                   + p2p[m].pathTo(q[1]) + " " + p2p[m].distTo(q[1])
+                                   + " settled " + p2p[m].getSettledCount());
+            }
+        }
+    }
+}
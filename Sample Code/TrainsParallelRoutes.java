@@ -0,0 +1,143 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsParallelRoutes.java
+ *  Execution:    java TrainsParallelRoutes
+ *  Dependencies: TrainsDigraph.java, TrainsGraph.java, TrainsRoutes.java
+ *                RouteCondition.java, TrainsBounds.java, TrainsBFS.java,
+ *                DirectedEdge.java
+ *
+ *  Counts the routes between two vertices that satisfy a RouteCondition on
+ *  all cores. The search tree is split into one ForkJoin task per partial
+ *  route over its first few stops; below that depth each task counts its
+ *  subtree sequentially with TrainsRoutes, and the per-task counts are
+ *  summed on the way back up. Idle workers steal the remaining subtrees,
+ *  so uneven branches still keep every core busy. The counts are the same
+ *  as those of the sequential search. TrainsBounds for the destination, if
+ *  given, prune every task the same way they prune TrainsRoutes.
+ *
+ *************************************************************************/
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class TrainsParallelRoutes {
+
+    public static final int SPLIT_HOPS = 3; // default number of stops split into tasks
+
+    /* number of routes from source to dest under the condition, on the
+     * common pool */
+    public static long count(TrainsGraph G, String source, String dest, RouteCondition condition) {
+        return count(G, source, dest, condition, ForkJoinPool.commonPool(), SPLIT_HOPS);
+    }
+
+    /* number of routes from source to dest under the condition, splitting
+     * the first split_hops stops of the search into tasks on pool */
+    public static long count(TrainsGraph G, String source, String dest, RouteCondition condition,
+                             ForkJoinPool pool, int split_hops) {
+        return count(G, source, dest, condition, null, pool, split_hops);
+    }
+
+    /* number of routes on the common pool, pruned with bounds computed
+     * for dest */
+    public static long count(TrainsGraph G, String source, String dest, RouteCondition condition,
+                             TrainsBounds bounds) {
+        return count(G, source, dest, condition, bounds, ForkJoinPool.commonPool(), SPLIT_HOPS);
+    }
+
+    /* number of routes, pruned with bounds (null for none), split into
+     * tasks on pool down to split_hops stops */
+    public static long count(TrainsGraph G, String source, String dest, RouteCondition condition,
+                             TrainsBounds bounds, ForkJoinPool pool, int split_hops) {
+        int s = G.indexOf(source), t = G.indexOf(dest);
+        if (s < 0) throw new IllegalArgumentException("no such vertex: " + source);
+        if (t < 0) return 0; // no routes to a station that is not in the graph
+        if (bounds != null) TrainsRoutes.check(G, dest, bounds);
+        return pool.invoke(new CountTask(G, t, condition, bounds, s, 0, 0, split_hops));
+    }
+
+    /* counts the routes that continue a partial route ending at vertex v */
+    private static class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private final TrainsGraph G;
+        private final RouteCondition condition;
+        private final TrainsBounds bounds;
+        private final int dest, v, hops, dist, split_hops;
+
+        CountTask(TrainsGraph G, int dest, RouteCondition condition, TrainsBounds bounds,
+                  int v, int hops, int dist, int split_hops) {
+            this.G = G;
+            this.dest = dest;
+            this.condition = condition;
+            this.bounds = bounds;
+            this.v = v;
+            this.hops = hops;
+            this.dist = dist;
+            this.split_hops = split_hops;
+        }
+
+        protected Long compute() {
+            if (split_hops == 0)
+            {
+                return new TrainsRoutes(G, v, hops, dist, dest, condition, bounds).countRemaining();
+            }
+            if (!condition.canExtend(hops, dist)
+                || bounds != null && !bounds.canFinish(condition, v, hops, dist))
+            {
+                return 0L;
+            }
+
+            // one subtask per outgoing edge; the last one runs on this thread
+            int begin = G.outBegin(v), end = G.outEnd(v);
+            CountTask[] subtasks = new CountTask[end - begin];
+            long count = 0;
+            for (int e = begin; e < end; e++)
+            {
+                int w = G.outTo(e), d = dist + G.outWeight(e);
+                if (w == dest && condition.accepts(hops + 1, d)) count++;
+                subtasks[e - begin] = new CountTask(G, dest, condition, bounds, w, hops + 1, d,
+                                                    split_hops - 1);
+                if (e < end - 1) subtasks[e - begin].fork();
+            }
+            if (end > begin)
+            {
+                count += subtasks[end - begin - 1].compute();
+                for (int i = end - begin - 2; i >= 0; i--)
+                    count += subtasks[i].join();
+            }
+            return count;
+        }
+    }
+
+    // test method
+    public static void main(String[] args) {
+
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        TrainsCSR csr = G.snapshot();
+
+        // questions 6, 7 and 10, checked against the sequential searches
+        String[][] queries = { {"6", "C", "C"}, {"7", "A", "C"}, {"10", "C", "C"} };
+        for (String[] q : queries) {
+            int quizno = Integer.parseInt(q[0]);
+            RouteCondition cond = RouteCondition.forQuestion(quizno);
+            System.out.println("question " + quizno + ": parallel = "
+                               + count(csr, q[1], q[2], cond) + ", sequential = "
+                               + new TrainsBFS(csr, q[1], q[2], quizno).getTripCount());
+        }
+
+        // a larger search
+        RouteCondition cond = RouteCondition.shorterThan(150);
+        long start = System.nanoTime();
+        long sequential = TrainsRoutes.count(csr, "C", "C", cond);
+        long mid = System.nanoTime();
+        long parallel = count(csr, "C", "C", cond);
+        long end = System.nanoTime();
+        System.out.printf("distance < 150: sequential %d in %d ms, parallel %d in %d ms%n",
+                          sequential, (mid - start) / 1000000, parallel, (end - mid) / 1000000);
+        System.out.println("pruned with bounds: "
+                           + count(csr, "C", "C", cond, new TrainsBounds(csr, "C")));
+    }
+}
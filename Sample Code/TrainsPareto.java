@@ -0,0 +1,211 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsPareto.java
+ *  Execution:    java TrainsPareto
+ *  Dependencies: TrainsGraph.java, Route.java, TrainsDigraph.java
+ *                DirectedEdge.java
+ *
+ *  The Pareto set of routes between two stations under two criteria,
+ *  total distance and number of stops: every route for which no other
+ *  route is at least as short with at most as many stops, and strictly
+ *  better in one of the two. This is the whole trade-off between length
+ *  and changes in one search, instead of one bounded search per stop
+ *  count.
+ *
+ *  The search is label setting. A label is a partial route summed up as
+ *  (vertex, stops, distance, parent label), kept in a pool of primitive
+ *  arrays, and labels are settled in order of distance, then stops, from
+ *  a heap of packed long keys. Because distances only grow, a label that
+ *  reaches a vertex with no fewer stops than a label already settled there
+ *  is dominated and dropped, so each vertex only keeps the least stop count
+ *  settled so far; the settled labels of a vertex are chained together as
+ *  its bucket. Labels that cannot beat a route already found to the
+ *  destination are dropped the same way.
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TrainsPareto {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private final TrainsGraph G;
+    private final int s, t;
+    private final int max_hops;       // no route with more stops is considered
+
+    /* label pool: label i is a route to vertex[i] with hops[i] stops and
+     * distance dist[i], extending label parent[i] (-1 for the source) */
+    private int[] vertex = new int[64], hops = new int[64], dist = new int[64];
+    private int[] parent = new int[64], next_in_bucket = new int[64];
+    private int num_labels = 0;
+
+    private final int[] bucket;       // bucket[v] = last label settled at v, -1 if none
+    private final int[] min_hops;     // min_hops[v] = fewest stops of a label settled at v
+
+    /* heap of labels keyed on distance << 32 | stops */
+    private long[] heap_key = new long[64];
+    private int[] heap_label = new int[64];
+    private int heap_size = 0;
+
+    private final List<Route> routes = new ArrayList<Route>();
+    private int settled;              // labels settled
+
+    /* the Pareto set of routes from source to dest */
+    public TrainsPareto(TrainsGraph G, String source, String dest) {
+        this(G, source, dest, INFINITY);
+    }
+
+    /* the Pareto set of routes from source to dest with at most max_hops stops */
+    public TrainsPareto(TrainsGraph G, String source, String dest, int max_hops) {
+        this.G = G;
+        s = index(source);
+        t = index(dest);
+        this.max_hops = max_hops;
+        int V = G.V();
+        bucket = new int[V];
+        min_hops = new int[V];
+        Arrays.fill(bucket, -1);
+        Arrays.fill(min_hops, INFINITY);
+        search();
+    }
+
+    /* return the id of vertex V in the snapshot */
+    private int index(String V) {
+        int v = G.indexOf(V);
+        if (v < 0) throw new IllegalArgumentException("no such vertex: " + V);
+        return v;
+    }
+
+    private void search() {
+        push(newLabel(s, 0, 0, -1));
+        while (heap_size > 0)
+        {
+            int label = pop();
+            int v = vertex[label], h = hops[label];
+            if (h >= min_hops[v] || h >= min_hops[t]) continue;   // dominated
+            boolean start = label == 0;
+            if (!start || s != t)
+            {
+                // settle: the label joins its vertex's bucket
+                min_hops[v] = h;
+                next_in_bucket[label] = bucket[v];
+                bucket[v] = label;
+                settled++;
+                if (v == t)
+                {
+                    routes.add(toRoute(label));
+                    continue;   // going through t again is never better
+                }
+            }
+            if (h == max_hops) continue;
+            for (int e = G.outBegin(v); e < G.outEnd(v); e++)
+            {
+                int w = G.outTo(e);
+                if (h + 1 >= min_hops[w] || h + 1 >= min_hops[t]) continue;
+                push(newLabel(w, h + 1, dist[label] + G.outWeight(e), label));
+            }
+        }
+    }
+
+    /* add a label to the pool and return its index */
+    private int newLabel(int v, int h, int d, int from) {
+        if (num_labels == vertex.length)
+        {
+            int n = 2 * num_labels;
+            vertex = Arrays.copyOf(vertex, n);
+            hops = Arrays.copyOf(hops, n);
+            dist = Arrays.copyOf(dist, n);
+            parent = Arrays.copyOf(parent, n);
+            next_in_bucket = Arrays.copyOf(next_in_bucket, n);
+        }
+        vertex[num_labels] = v;
+        hops[num_labels] = h;
+        dist[num_labels] = d;
+        parent[num_labels] = from;
+        next_in_bucket[num_labels] = -1;
+        return num_labels++;
+    }
+
+    /* put a label on the heap */
+    private void push(int label) {
+        if (heap_size == heap_key.length)
+        {
+            heap_key = Arrays.copyOf(heap_key, 2 * heap_size);
+            heap_label = Arrays.copyOf(heap_label, 2 * heap_size);
+        }
+        long key = (long) dist[label] << 32 | hops[label];
+        int i = heap_size++;
+        while (i > 0 && heap_key[(i - 1) / 2] > key)
+        {
+            heap_key[i] = heap_key[(i - 1) / 2];
+            heap_label[i] = heap_label[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap_key[i] = key;
+        heap_label[i] = label;
+    }
+
+    /* remove and return the label with the least (distance, stops) */
+    private int pop() {
+        int top = heap_label[0];
+        long key = heap_key[--heap_size];
+        int label = heap_label[heap_size];
+        int i = 0;
+        while (2 * i + 1 < heap_size)
+        {
+            int c = 2 * i + 1;
+            if (c + 1 < heap_size && heap_key[c + 1] < heap_key[c]) c++;
+            if (heap_key[c] >= key) break;
+            heap_key[i] = heap_key[c];
+            heap_label[i] = heap_label[c];
+            i = c;
+        }
+        heap_key[i] = key;
+        heap_label[i] = label;
+        return top;
+    }
+
+    private Route toRoute(int label) {
+        int[] path = new int[hops[label] + 1];
+        for (int i = path.length - 1, l = label; i >= 0; i--, l = parent[l]) path[i] = vertex[l];
+        return new Route(G, path, path.length, dist[label]);
+    }
+
+    /* the Pareto-optimal routes, shortest first (and so most stops first) */
+    public List<Route> routes() {
+        return routes;
+    }
+
+    /* number of labels settled by the search */
+    public int getSettledCount() {
+        return settled;
+    }
+
+    /* number of labels created by the search */
+    public int getLabelCount() {
+        return num_labels;
+    }
+
+    // test method
+    public static void main(String[] args) {
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        // an express service: fewer stops but longer
+        G.addEdge(new DirectedEdge("A", "C", 12));
+        TrainsCSR csr = G.snapshot();
+        String[][] queries = { {"A", "C"}, {"B", "B"}, {"A", "E"}, {"C", "A"} };
+        for (String[] q : queries) {
+            TrainsPareto pareto = new TrainsPareto(csr, q[0], q[1]);
+            System.out.print(q[0] + " to " + q[1] + ":");
+            for (Route r : pareto.routes()) {
+                System.out.print("  " + r + " (" + r.distance() + ", " + r.hops() + " stops)");
+            }
+            System.out.println();
+        }
+    }
+}
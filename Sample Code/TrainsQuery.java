@@ -0,0 +1,168 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsQuery.java
+ *  Dependencies: TrainsGraph.java, TrainsSP.java, TrainsP2P.java, TrainsTripCounter.java
+ *                TrainsDistanceCounter.java, TrainsRoutes.java, TrainsBFS.java
+ *
+ *  One question of the trains problem in text form, as read by the batch
+ *  mode of TrainsClient. A query is the question number followed by its
+ *  arguments, separated by spaces:
+ *
+ *      1 A-B-C         distance of a route (questions 1 to 5)
+ *      6 C C [3]       trips with at most 3 stops
+ *      7 A C [4]       trips with exactly 4 stops
+ *      8 A C           shortest route (questions 8 and 9)
+ *      10 C C [30]     routes shorter than distance 30
+ *
+ *  The bracketed limits are optional and default to those of TrainsBFS.
+ *
+ *************************************************************************/
+
+public class TrainsQuery
+{
+    private final String text;     // the query as written
+    private final int quizno;      // number of the problem/question
+    private final String path;     // route for questions 1 to 5
+    private final String source, dest;
+    private final int limit;       // stop count or distance bound
+
+    private TrainsQuery(String text, int quizno, String path,
+                        String source, String dest, int limit)
+    {
+        this.text = text;
+        this.quizno = quizno;
+        this.path = path;
+        this.source = source;
+        this.dest = dest;
+        this.limit = limit;
+    }
+
+    /* parse one query line; throws IllegalArgumentException if malformed */
+    public static TrainsQuery parse(String line)
+    {
+        String text = line.trim();
+        String[] tokens = text.split("\\s+");
+        int quizno;
+        try {
+            quizno = Integer.parseInt(tokens[0]);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad question number: " + text);
+        }
+
+        switch (quizno)
+        {
+            case 1:
+            case 2:
+            case 3:
+            case 4:
+            case 5:
+                if (tokens.length != 2)
+                    throw new IllegalArgumentException("expected a route, e.g. 1 A-B-C: " + text);
+                return new TrainsQuery(text, quizno, tokens[1], null, null, 0);
+            case 6:
+            case 7:
+            case 8:
+            case 9:
+            case 10:
+                if (tokens.length < 3 || tokens.length > 4 || (quizno == 8 || quizno == 9) && tokens.length > 3)
+                    throw new IllegalArgumentException("expected origin and destination: " + text);
+                int limit = defaultLimit(quizno);
+                if (tokens.length == 4)
+                {
+                    try {
+                        limit = Integer.parseInt(tokens[3]);
+                    }
+                    catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("bad limit: " + text);
+                    }
+                }
+                return new TrainsQuery(text, quizno, null, tokens[1], tokens[2], limit);
+            default:
+                throw new IllegalArgumentException("no such question: " + text);
+        }
+    }
+
+    /* the stop count or distance bound a question uses by default */
+    private static int defaultLimit(int quizno)
+    {
+        switch (quizno)
+        {
+            case 6:  return TrainsBFS.MAX_STOPS;
+            case 7:  return TrainsBFS.EXACT_STOPS;
+            case 10: return TrainsBFS.MAX_DIST;
+            default: return 0;
+        }
+    }
+
+    public String text()   { return text;   }
+    public int quizno()    { return quizno; }
+    public String path()   { return path;   }
+    public String source() { return source; }
+    public String dest()   { return dest;   }
+    public int limit()     { return limit;  }
+
+    /* answer to a route-distance question (1 to 5) */
+    public static String formatDistance(int path_dist)
+    {
+        return path_dist < 0 ? "NO SUCH PATH" : Integer.toString(path_dist);
+    }
+
+    /* answer to a shortest-route question (8 and 9) */
+    public static String formatShortest(TrainsSP sp, String dest)
+    {
+        if (!sp.hasPathTo(dest)) return "NO SUCH ROUTE";
+        return sp.pathTo(dest) + "; length = " + (int) sp.distTo(dest);
+    }
+
+    /* answer to a shortest-route question from a point-to-point search */
+    public static String formatShortest(TrainsP2P sp, String dest)
+    {
+        if (!sp.hasPathTo(dest)) return "NO SUCH ROUTE";
+        return sp.pathTo(dest) + "; length = " + (int) sp.distTo(dest);
+    }
+
+    /* edges route enumeration may examine for question 10 before switching
+     * to TrainsDistanceCounter, which makes about bound * (V + E) steps; an
+     * enumeration step costs a few counter steps, hence the quarter */
+    static long enumerationBudget(TrainsGraph G, int bound)
+    {
+        return (long) Math.max(bound, 1) * (G.V() + G.E()) / 4;
+    }
+
+    /* number of routes from source to dest shorter than bound (question
+     * 10). Short bounds have few routes, and enumerating them is far
+     * cheaper than the distance-layer count; enumeration is tried first
+     * and abandoned for the counter once it has done about as much work as
+     * the counter would, so a bad guess costs at most about twice as much. */
+    public static long countShorterThan(TrainsGraph G, String source, String dest, int bound)
+    {
+        long count = TrainsRoutes.count(G, source, dest, RouteCondition.shorterThan(bound),
+                                        enumerationBudget(G, bound));
+        if (count >= 0) return count;
+        return new TrainsDistanceCounter(G, source, bound).countTo(dest);
+    }
+
+    /* answer this query on its own against G */
+    public String answer(TrainsGraph G)
+    {
+        switch (quizno)
+        {
+            case 6:
+                return Long.toString(new TrainsTripCounter(G, source, limit).countAtMost(dest, limit));
+            case 7:
+                return Long.toString(new TrainsTripCounter(G, source, limit).countExactly(dest, limit));
+            case 8:
+            case 9:
+                return formatShortest(new TrainsP2P(G, source, dest), dest);
+            case 10:
+                return Long.toString(countShorterThan(G, source, dest, limit));
+            default:
+                return formatDistance(G.findDistance(path.split("-")));
+        }
+    }
+
+    public String toString()
+    {
+        return text;
+    }
+}
@@ -0,0 +1,209 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsQueryCache.java
+ *  Execution:    java TrainsQueryCache
+ *  Dependencies: TrainsQuery.java, TrainsGraph.java, TrainsDigraph.java
+ *                ConcurrentTrainsDigraph.java, TrainsCSR.java, DirectedEdge.java
+ *
+ *  Bounded cache of query answers. An answer is filed under the question
+ *  number, its route or origin and destination, its bound, and the
+ *  version of the graph it was computed on; since every addEdge moves the
+ *  graph to a new version, an answer for an older graph is never looked up
+ *  again and simply ages out. The cache is split into segments by key hash,
+ *  each a LinkedHashMap in access order behind its own lock, and each
+ *  segment evicts its least recently used entry when full, so threads
+ *  asking about different keys rarely wait for one another. Hits, misses
+ *  and evictions are counted.
+ *
+ *  The version and the snapshot an answer is computed on are always taken
+ *  together, so an answer is never filed under a version it was not
+ *  computed for. The cache pays off where one graph is queried over time
+ *  as it changes, as in TrainsServer; a batch run on a graph loaded once
+ *  already shares its work through TrainsBatch.
+ *
+ *************************************************************************/
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TrainsQueryCache {
+
+    private static final int SEGMENTS = 16;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final int capacity;
+
+    /* what an answer depends on */
+    private static final class Key {
+        final int quizno, limit;
+        final String first, second;   // route, or origin and destination
+        final long version;
+        final int hash;
+
+        Key(TrainsQuery q, long version) {
+            quizno = q.quizno();
+            limit = q.limit();
+            first = q.path() != null ? q.path() : q.source();
+            second = q.dest();
+            this.version = version;
+            int h = 31 * quizno + limit;
+            h = 31 * h + first.hashCode();
+            h = 31 * h + (second == null ? 0 : second.hashCode());
+            h = 31 * h + (int) (version ^ (version >>> 32));
+            hash = h ^ (h >>> 16);
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key that = (Key) other;
+            return hash == that.hash && quizno == that.quizno && limit == that.limit
+                && version == that.version && first.equals(that.first)
+                && (second == null ? that.second == null : second.equals(that.second));
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /* one LRU segment; all access is under its own lock */
+    private final class Segment extends LinkedHashMap<Key, String> {
+        private static final long serialVersionUID = 1L;
+        private final int max_entries;
+
+        Segment(int max_entries) {
+            super(16, 0.75f, true);
+            this.max_entries = max_entries;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            if (size() <= max_entries) return false;
+            evictions.increment();
+            return true;
+        }
+    }
+
+    /* a cache holding at most about capacity answers */
+    public TrainsQueryCache(int capacity) {
+        if (capacity < SEGMENTS) throw new IllegalArgumentException("capacity must be at least " + SEGMENTS);
+        this.capacity = capacity;
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(capacity / SEGMENTS);
+    }
+
+    private Segment segment(Key key) {
+        return segments[key.hash & (SEGMENTS - 1)];
+    }
+
+    /* the cached answer to q on version of the graph, or null */
+    public String get(TrainsQuery q, long version) {
+        Key key = new Key(q, version);
+        Segment segment = segment(key);
+        String answer;
+        synchronized (segment) {
+            answer = segment.get(key);
+        }
+        if (answer == null) misses.increment();
+        else                hits.increment();
+        return answer;
+    }
+
+    /* remember the answer to q on version of the graph */
+    public void put(TrainsQuery q, long version, String answer) {
+        Key key = new Key(q, version);
+        Segment segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, answer);
+        }
+    }
+
+    /* the answer to q on G, which is the given version of the graph,
+     * computed only when it is not cached; errors are not cached */
+    public String answer(TrainsQuery q, TrainsGraph G, long version) {
+        String answer = get(q, version);
+        if (answer == null)
+        {
+            answer = q.answer(G);
+            put(q, version, answer);
+        }
+        return answer;
+    }
+
+    /* the answer to q on the current state of G; the version is read again
+     * after the snapshot is taken, and both are taken again if an edge was
+     * added in between */
+    public String answer(TrainsQuery q, TrainsDigraph G) {
+        long version;
+        TrainsCSR snapshot;
+        do {
+            version = G.getVersion();
+            snapshot = G.snapshot();
+        } while (version != G.getVersion());
+        return answer(q, snapshot, version);
+    }
+
+    /* the answer to q on the snapshot of G current when it is called */
+    public String answer(TrainsQuery q, ConcurrentTrainsDigraph G) {
+        ConcurrentTrainsDigraph.Snapshot pinned = G.pin();
+        return answer(q, pinned.graph(), pinned.version());
+    }
+
+    /* drop every cached answer; the statistics are kept */
+    public void clear() {
+        for (Segment segment : segments)
+        {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /* number of answers cached */
+    public int size() {
+        int n = 0;
+        for (Segment segment : segments)
+        {
+            synchronized (segment) {
+                n += segment.size();
+            }
+        }
+        return n;
+    }
+
+    public long getHitCount()      { return hits.sum();      }
+    public long getMissCount()     { return misses.sum();    }
+    public long getEvictionCount() { return evictions.sum(); }
+
+    /* fraction of lookups that were hits */
+    public double getHitRate() {
+        long h = hits.sum(), n = h + misses.sum();
+        return n == 0 ? 0 : (double) h / n;
+    }
+
+    public String toString() {
+        return String.format("%d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                             size(), capacity, getHitCount(), getMissCount(),
+                             100 * getHitRate(), getEvictionCount());
+    }
+
+    // test method
+    public static void main(String[] args) {
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        TrainsQueryCache cache = new TrainsQueryCache(64);
+        String[] lines = { "1 A-B-C", "8 A C", "10 C C", "8 A C", "1 A-B-C", "10 C C 30" };
+        for (String line : lines) {
+            System.out.println(line + " : " + cache.answer(TrainsQuery.parse(line), G));
+        }
+        System.out.println(cache);
+
+        // a new edge moves the graph on; the old answer is not served
+        G.addEdge(new DirectedEdge("A", "C", 3));
+        System.out.println("8 A C : " + cache.answer(TrainsQuery.parse("8 A C"), G));
+        System.out.println(cache);
+    }
+}
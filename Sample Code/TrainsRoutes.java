@@ -0,0 +1,228 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsRoutes.java
+ *  Execution:    java TrainsRoutes
+ *  Dependencies: TrainsDigraph.java, TrainsGraph.java, Route.java
+ *                RouteCondition.java, TrainsBounds.java, DirectedEdge.java
+ *
+ *  Lazy enumeration of the routes between two vertices that satisfy a
+ *  RouteCondition. The search is depth-first over the CSR snapshot with an
+ *  explicit stack of (vertex, next edge, distance) per depth, so memory is
+ *  bounded by the length of the longest route explored rather than by the
+ *  breadth of the search. The next route is only looked for when the
+ *  caller asks for it, and count() walks the same search without creating
+ *  any Route objects, optionally giving up after a number of edges. Given
+ *  TrainsBounds for the destination, a partial route is not followed once
+ *  no completion of it could satisfy the condition. A destination that is
+ *  not in the graph has no routes; an unknown source is an error.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class TrainsRoutes implements Iterator<Route> {
+
+    private final TrainsGraph G;
+    private final RouteCondition condition;
+    private final TrainsBounds bounds; // lower bounds to dest, null for no pruning
+    private final int dest;
+    private final int base_hops;      // stops already made before the start vertex
+    private int[] path;               // path[d] = vertex at depth d
+    private int[] cursor;             // cursor[d] = next edge to try from path[d]
+    private int[] dist;               // dist[d] = distance travelled up to path[d]
+    private int depth;                // depth of the top of the stack, -1 when done
+    private boolean found;            // the top of the stack is an unreported match
+    private long steps;               // edges examined so far
+    private long max_steps = Long.MAX_VALUE; // give up after this many edges
+    private boolean exceeded;         // gave up before the search was done
+
+    /* enumerate routes from source to dest in G under the condition */
+    public TrainsRoutes(TrainsGraph G, String source, String dest, RouteCondition condition) {
+        this(G, index(G, source), 0, 0, G.indexOf(dest), condition, null);
+    }
+
+    /* enumerate routes from source to dest, pruned with bounds computed
+     * for dest on G */
+    public TrainsRoutes(TrainsGraph G, String source, String dest, RouteCondition condition,
+                        TrainsBounds bounds) {
+        this(G, index(G, source), 0, 0, G.indexOf(dest), condition, check(G, dest, bounds));
+    }
+
+    /* enumerate the routes below a partial route that has reached vertex
+     * start after hops stops and distance travelled; none if dest is -1 */
+    TrainsRoutes(TrainsGraph G, int start, int hops, int distance, int dest, RouteCondition condition,
+                 TrainsBounds bounds) {
+        this.G = G;
+        this.condition = condition;
+        this.bounds = bounds;
+        this.dest = dest;
+        base_hops = hops;
+        path = new int[16];
+        cursor = new int[16];
+        dist = new int[16];
+        depth = 0;
+        path[0] = start;
+        dist[0] = distance;
+        cursor[0] = condition.canExtend(hops, distance) ? G.outBegin(start) : G.outEnd(start);
+        if (dest < 0 || bounds != null && !bounds.canFinish(condition, start, hops, distance))
+            depth = -1; // nothing below the start can match
+    }
+
+    /* reject bounds that were computed for another graph or destination */
+    static TrainsBounds check(TrainsGraph G, String dest, TrainsBounds bounds) {
+        if (bounds.graph() != G || bounds.dest() != G.indexOf(dest))
+            throw new IllegalArgumentException("bounds were computed for another destination");
+        return bounds;
+    }
+
+    /* return the id of vertex V, rejecting unknown vertices */
+    private static int index(TrainsGraph G, String V) {
+        int v = G.indexOf(V);
+        if (v < 0) throw new IllegalArgumentException("no such vertex: " + V);
+        return v;
+    }
+
+    /* move the search on to the next matching route; false when exhausted */
+    private boolean advance() {
+        while (depth >= 0)
+        {
+            int v = path[depth];
+            if (cursor[depth] == G.outEnd(v))
+            {
+                depth--; // all edges from v examined
+                continue;
+            }
+            int e = cursor[depth]++;
+            if (++steps > max_steps)
+            {
+                exceeded = true;
+                depth = -1;
+                return false;
+            }
+            int w = G.outTo(e), d = dist[depth] + G.outWeight(e);
+            int hops = base_hops + depth + 1;
+            if (bounds != null && !bounds.canFinish(condition, w, hops, d))
+            {
+                continue; // dest is out of reach from w within the condition
+            }
+            if (++depth == path.length)
+            {
+                path = Arrays.copyOf(path, 2 * depth);
+                cursor = Arrays.copyOf(cursor, 2 * depth);
+                dist = Arrays.copyOf(dist, 2 * depth);
+            }
+            path[depth] = w;
+            dist[depth] = d;
+            cursor[depth] = condition.canExtend(hops, d) ? G.outBegin(w) : G.outEnd(w);
+            if (w == dest && condition.accepts(hops, d))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasNext() {
+        if (!found) found = advance();
+        return found;
+    }
+
+    public Route next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        found = false;
+        return new Route(G, path, depth + 1, dist[depth]);
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /* count the remaining matching routes without building them */
+    long countRemaining() {
+        long count = found ? 1 : 0;
+        found = false;
+        while (advance()) count++;
+        return count;
+    }
+
+    /* count the remaining matching routes, giving up with -1 once more
+     * than max_steps further edges have been examined */
+    long countRemaining(long max_steps) {
+        this.max_steps = max_steps <= Long.MAX_VALUE - steps ? steps + max_steps : Long.MAX_VALUE;
+        long count = countRemaining();
+        return exceeded ? -1 : count;
+    }
+
+    /* number of edges examined so far */
+    long steps() {
+        return steps;
+    }
+
+    /* lazy stream of the routes from source to dest under the condition */
+    public static Stream<Route> stream(TrainsGraph G, String source, String dest,
+                                       RouteCondition condition) {
+        Iterator<Route> routes = new TrainsRoutes(G, source, dest, condition);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(routes,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /* lazy stream of the routes, pruned with bounds computed for dest */
+    public static Stream<Route> stream(TrainsGraph G, String source, String dest,
+                                       RouteCondition condition, TrainsBounds bounds) {
+        Iterator<Route> routes = new TrainsRoutes(G, source, dest, condition, bounds);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(routes,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /* number of routes from source to dest under the condition */
+    public static long count(TrainsGraph G, String source, String dest, RouteCondition condition) {
+        return new TrainsRoutes(G, source, dest, condition).countRemaining();
+    }
+
+    /* number of routes, pruned with bounds computed for dest */
+    public static long count(TrainsGraph G, String source, String dest, RouteCondition condition,
+                             TrainsBounds bounds) {
+        return new TrainsRoutes(G, source, dest, condition, bounds).countRemaining();
+    }
+
+    /* number of routes, or -1 if counting them takes more than max_steps
+     * edges; lets a caller fall back to a counter whose cost does not
+     * depend on the number of routes */
+    public static long count(TrainsGraph G, String source, String dest, RouteCondition condition,
+                             long max_steps) {
+        return new TrainsRoutes(G, source, dest, condition).countRemaining(max_steps);
+    }
+
+    // test method
+    public static void main(String[] args) {
+
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        TrainsCSR csr = G.snapshot();
+
+        // questions 6, 7 and 10
+        String[][] queries = { {"6", "C", "C"}, {"7", "A", "C"}, {"10", "C", "C"} };
+        for (String[] q : queries) {
+            RouteCondition cond = RouteCondition.forQuestion(Integer.parseInt(q[0]));
+            System.out.println(q[1] + " to " + q[2] + ", " + cond + ":");
+            Iterator<Route> routes = new TrainsRoutes(csr, q[1], q[2], cond);
+            while (routes.hasNext()) {
+                System.out.println("  " + routes.next());
+            }
+            System.out.println("  count = " + count(csr, q[1], q[2], cond));
+        }
+
+        // stop early: the first three routes under a large bound
+        stream(csr, "C", "C", RouteCondition.shorterThan(1000)).limit(3)
+            .forEach(r -> System.out.println("  " + r + " length = " + r.distance()));
+    }
+}
@@ -3,151 +3,238 @@
  *  Date: 07/08/2012
  *  Compilation:  javac TrainsSP.java
  *  Execution:    java TrainsSP
- *  Dependencies: TrainsDigraph.java IndexMinPQ.java DirectedEdge.java
+ *  Dependencies: TrainsDigraph.java TrainsGraph.java IndexMinIntPQ.java
+ *                DirectedEdge.java TrainsMetrics.java
  *
  *  Implements Dijkstra's Shortest Path Algorithm, modified to compute the
  *  computes the shortest path tree that gives the shortest distance from
  *  a node to itself. Assumes all weights are nonnegative.
  *
+ *  When the source and destination are the same vertex, the search is
+ *  seeded with the source's outgoing edges instead of the source itself,
+ *  and stops as soon as the source is settled again; the graph is never
+ *  modified, so one graph can serve concurrent round-trip queries.
+ *
+ *  The priority queue and the label arrays can be kept in a Workspace
+ *  that the caller reuses across searches.
+ *
+ *  Each search counts the vertices it settles, the edges it relaxes and
+ *  the decreaseKey calls it makes, and records them with its wall time in
+ *  TrainsMetrics.
+ *
  *************************************************************************/
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 import java.util.LinkedList;
 
 public class TrainsSP {    
     private static final int INFINITY = Integer.MAX_VALUE;
     private int[] distTo;          // distTo[v] = distance  of shortest source->v path
-    private DirectedEdge[] edgeTo;    // edgeTo[v] = last edge on shortest source->v path
-    private IndexMinPQ<Integer> pq;    // priority queue of vertices
-    private Map<Integer, String> key2vertex_map;
-    private Map<String, Integer> vertex2key_map;
-    private int num_vertices; 
-    private String new_vertex, source, dest;
+    private int[] edgeTo;          // edgeTo[v] = last edge on shortest source->v path, -1 if none
+    private IndexMinIntPQ pq;      // priority queue of vertices
+    private TrainsGraph G;           // frozen graph the search runs on
+    private String source, dest;
+    private int src_index;
+    private boolean round_trip;    // source and destination are the same vertex
+    private int settled, relaxed, decreased; // search counters
+    private long elapsed_nanos;    // wall time of the search
     
+    /* the arrays a search works in: its priority queue and the distance
+     * and edge labels of every vertex. A caller running many searches
+     * keeps one and hands it to each, so repeated queries allocate
+     * nothing; the answers of a search stay valid only until its
+     * workspace is used for the next one */
+    public static final class Workspace {
+        private final IndexMinIntPQ pq;
+        private final int[] distTo, edgeTo;
+
+        /* a workspace for graphs of up to V vertices */
+        public Workspace(int V) {
+            pq = new IndexMinIntPQ(V);
+            distTo = new int[V];
+            edgeTo = new int[V];
+        }
+
+        /* largest number of vertices a graph searched in it may have */
+        public int capacity() {
+            return distTo.length;
+        }
+    }
+
     /* perform Dijstra's shortest path computation method between
      * the source and destination vertices*/
     public TrainsSP(TrainsDigraph G, String source, String dest) {
-        key2vertex_map = new HashMap<Integer, String>();
-        vertex2key_map = new HashMap<String, Integer>();
+        this(G.snapshot(), source, dest, null);
+    }
+    
+    /* perform Dijstra's shortest path computation on a frozen snapshot */
+    public TrainsSP(TrainsGraph G, String source, String dest) {
+        this(G, source, dest, null);
+    }
+    
+    /* perform Dijstra's shortest path computation on a frozen snapshot in
+     * the given workspace (null to allocate one), so repeated queries do
+     * not reallocate their arrays */
+    public TrainsSP(TrainsGraph G, String source, String dest, Workspace ws) {
+        this(G, source, dest, source.equals(dest), ws, true);
+    }
+    
+    /* compute the full shortest path tree from source on a frozen snapshot
+     * in the given workspace (null to allocate one) */
+    public static TrainsSP tree(TrainsGraph G, String source, Workspace ws) {
+        return new TrainsSP(G, source, null, false, ws, true);
+    }
+    
+    /* a full shortest path tree that is not recorded in TrainsMetrics, for
+     * searches that are one step of a larger computation rather than a
+     * query of their own */
+    static TrainsSP unrecordedTree(TrainsGraph G, String source, Workspace ws) {
+        return new TrainsSP(G, source, null, false, ws, false);
+    }
+    
+    private TrainsSP(TrainsGraph G, String source, String dest, boolean round_trip, Workspace ws,
+                     boolean record) {
         this.source = source;
         this.dest = dest;
-        
-        if (source.equals(dest))
+        this.round_trip = round_trip;
+        dijkstra(G, ws, record);
+    }
+    
+    /* relax vertices in order of distance from source */
+    private void dijkstra(TrainsGraph G, Workspace ws, boolean record) {
+        long start = System.nanoTime();
+        this.G = G;
+        int num_vertices = G.V();
+        if (ws == null)
         {
-            num_vertices = G.getNumVertices() + 1; // add an extra/new vertex
-            handleSourceIsDest(G, source);
-        }        
-        else 
-        { 
-            num_vertices = G.getNumVertices(); 
+            ws = new Workspace(num_vertices);
         }
-        initializeMaps(G, key2vertex_map, vertex2key_map);
-        distTo = new int[num_vertices];
-        edgeTo = new DirectedEdge[num_vertices];
+        else if (ws.capacity() < num_vertices)
+        {
+            throw new IllegalArgumentException("workspace too small for graph");
+        }
+        distTo = ws.distTo;
+        edgeTo = ws.edgeTo;
+        pq = ws.pq;
         
         // initialize all distances to infinity
         for (int v = 0; v < num_vertices; v++) {
             distTo[v] = INFINITY;
+            edgeTo[v] = -1;
+        }
+        src_index = index(source);
+        pq.clear();
+        
+        if (round_trip)
+        {
+            /* the source stays at infinity until a cycle leads back to it */
+            for (int e = G.outBegin(src_index); e < G.outEnd(src_index); e++)
+                seed(e);
+        }
+        else
+        {
+            distTo[src_index] = 0;
+            pq.insert(src_index, distTo[src_index]);
         }
-        int src_index = vertex2key_map.get(source);
-        distTo[src_index] = 0;
-
-        // relax vertices in order of distance from source
-        pq = new IndexMinPQ<Integer>(num_vertices);
-        pq.insert(src_index, distTo[src_index]);
         while (!pq.isEmpty()) {
-            int min_index = pq.delMin();
-            String curr_vertex = key2vertex_map.get(min_index);
-            for (DirectedEdge e : G.adjEdgesFrom(curr_vertex))
+            int v = pq.delMin();
+            settled++;
+            if (round_trip && v == src_index) break; // shortest cycle found
+            for (int e = G.outBegin(v); e < G.outEnd(v); e++)
                 relax(e);
         }
+        elapsed_nanos = System.nanoTime() - start;
+        if (record)
+            (round_trip ? TrainsMetrics.ROUND_TRIP : TrainsMetrics.SHORTEST_PATH)
+                .record(elapsed_nanos, settled, relaxed, decreased);
     }
     
-    /* handles the special case of the shortest path problem when the
-     * source and destination vertices are the same */
-    public void handleSourceIsDest(TrainsDigraph G, String source)
-    {
-        Iterable<DirectedEdge> edges_to = G.adjEdgesTo(source);
-        new_vertex = "#"; // create a new, 'fictitious' vertex
-        String V = "";
-        int new_weight = 0; 
-        
-        /* point all vertices that point to the destination vertex to
-         * the new vertex */        
-        for (DirectedEdge e : edges_to)
-        {
-            V = e.from();
-            new_weight = e.weight();
-            DirectedEdge new_edge = new DirectedEdge(V, new_vertex, new_weight);
-            G.addEdge(new_edge);            
-        }
+    /* return the id of vertex V in the snapshot being searched */
+    private int index(String V) {
+        int v = G.indexOf(V);
+        if (v < 0) throw new IllegalArgumentException("no such vertex: " + V);
+        return v;
     }
     
-    /* initialize the mappings between integer and string representations of
-     * the graph's vertices. */
-    public void initializeMaps(TrainsDigraph G,
-                               Map<Integer, String> key2vertex_map, 
-                               Map<String, Integer> vertex2key_map)
-    {
-        Set vertices = G.getAllVertices();
-        int i = 0;
-        for (Object v : vertices) {
-            key2vertex_map.put(i, (String) v);
-            vertex2key_map.put((String) v, i);
-            i++;
+    /* put the head of the source's outgoing edge e on the pq */
+    private void seed(int e) {
+        int w = G.outTo(e);
+        
+        if (distTo[w] > G.outWeight(e)) {
+            distTo[w] = G.outWeight(e);
+            edgeTo[w] = e;
+            if (pq.contains(w)) { pq.decreaseKey(w, distTo[w]); decreased++; }
+            else                pq.insert(w, distTo[w]);
         }
     }
     
     /* relax edge e and update pq if changed */
-    private void relax(DirectedEdge e) {
-        String V = e.from(), W = e.to();
-        int v = vertex2key_map.get(V);
-        int w = vertex2key_map.get(W);
+    private void relax(int e) {
+        int v = G.outFrom(e), w = G.outTo(e);
         
-        if (distTo[w] > distTo[v] + e.weight()) {
-            distTo[w] = distTo[v] + e.weight();
+        relaxed++;
+        if (distTo[w] > distTo[v] + G.outWeight(e)) {
+            distTo[w] = distTo[v] + G.outWeight(e);
             edgeTo[w] = e;
-            if (pq.contains(w)) pq.change(w, distTo[w]);
+            if (pq.contains(w)) { pq.decreaseKey(w, distTo[w]); decreased++; }
             else                pq.insert(w, distTo[w]);
         }
     }
     
-    /* find the length of shortest path from s to v */
+    /* find the length of shortest path from s to v; for a round trip
+     * only the source's own distance is final */
     public double distTo(String V) {
-        if (source.equals(dest))
-        {
-            V = new_vertex;
-        }
-        int v = vertex2key_map.get(V);
-        return distTo[v];
+        return distTo[index(V)];
     }
 
     // is there a path from s to v?
     public boolean hasPathTo(String V) {
-        int v = vertex2key_map.get(V);
+        return distTo[index(V)] < INFINITY;
+    }
+    
+    /* length of the shortest path from s to the vertex with id v */
+    public int distTo(int v) {
+        return distTo[v];
+    }
+    
+    /* is there a path from s to the vertex with id v? */
+    public boolean hasPathTo(int v) {
         return distTo[v] < INFINITY;
     }
+    
+    /* last edge (index into the snapshot) on the shortest path to v, -1 if none */
+    public int edgeTo(int v) {
+        return edgeTo[v];
+    }
+
+    /* number of vertices taken off the priority queue */
+    public int getSettledCount() {
+        return settled;
+    }
+    
+    /* number of edges relaxed */
+    public int getRelaxedCount() {
+        return relaxed;
+    }
+    
+    /* number of decreaseKey calls on the priority queue */
+    public int getDecreaseKeyCount() {
+        return decreased;
+    }
+    
+    /* wall time of the search in nanoseconds */
+    public long getElapsedNanos() {
+        return elapsed_nanos;
+    }
 
     /* shortest path from s to v as an Iterable, null if no such path */
     public Iterable<DirectedEdge> pathTo(String V) {
-        String tmpV = "";
-        if (source.equals(dest))
-        {
-            tmpV = V;
-            V = new_vertex;
-        }
-        int v = vertex2key_map.get(V);
-        if (!hasPathTo(V)) return null;
+        int v = index(V);
+        if (!hasPathTo(v)) return null;
         LinkedList<DirectedEdge> path = new LinkedList<DirectedEdge>();
-        for (DirectedEdge e = edgeTo[v]; e != null;
-             e = edgeTo[vertex2key_map.get(e.from())]) {
-                 if (e.to().equals(new_vertex))
-                 {
-                     DirectedEdge ne = new DirectedEdge(e.from(), tmpV, e.weight());
-                     path.push(ne);
-                 }
-                 else {path.push(e); }
+        for (int e = edgeTo[v]; e != -1; ) {
+            path.push(G.edge(e));
+            int u = G.outFrom(e);
+            e = (u == src_index) ? -1 : edgeTo[u]; // stop once back at the source
         }
         return path;
     }
@@ -183,5 +270,15 @@ public class TrainsSP {
                 System.out.printf("%s to %s         no path\n", src, dst);
             }
         }
+        
+        // shortest round trip; the graph is left untouched
+        int num_edges = G.getNumEdges();
+        TrainsSP cycle = new TrainsSP(G, "A", "A");
+        System.out.print("shortest round trip from A : " + cycle.distTo("A") + " ");
+        for (DirectedEdge e : cycle.pathTo("A")) {
+            System.out.print(e + "   ");
+        }
+        System.out.println();
+        System.out.println("edges before/after: " + num_edges + "/" + G.getNumEdges());
     }
 }
\ No newline at end of file
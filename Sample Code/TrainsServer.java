@@ -0,0 +1,298 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsServer.java
+ *  Execution:    java TrainsServer graph.txt [port]
+ *                java TrainsServer            (self test on a free port)
+ *  Dependencies: ConcurrentTrainsDigraph.java, TrainsQuery.java,
+ *                TrainsQueryCache.java, TrainsClient.java, TrainsCSR.java,
+ *                DirectedEdge.java
+ *
+ *  Long-running query service for one loaded graph, on a plain TCP port
+ *  of the loopback interface. The protocol is line based: each request is
+ *  one line in the same form as the batch query files (see TrainsQuery),
+ *  and each gets exactly one line back, in order. A client may send any
+ *  number of requests without waiting for the answers (pipelining); the
+ *  answers are buffered and only flushed when no more requests are waiting
+ *  to be read. Besides the questions the server understands
+ *
+ *      add FROM TO WEIGHT      add an edge of positive weight; answers OK and
+ *                              the new version
+ *      version                 the version of the graph being queried
+ *      stats                   statistics of the answer cache
+ *      quit                    close the connection
+ *
+ *  Each request is answered against the snapshot current when it arrives,
+ *  so edges can be added while queries run. Answers are cached by graph
+ *  version (see TrainsQueryCache), so a repeated question costs a lookup
+ *  until the next edge is added. Every connection has its own
+ *  thread: a virtual thread when the runtime has them (Java 21 and later),
+ *  otherwise a thread from a cached pool.
+ *
+ *************************************************************************/
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TrainsServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 7878;
+    public static final int DEFAULT_CACHE_SIZE = 1 << 16; // answers kept
+    private final ConcurrentTrainsDigraph graph;
+    private final TrainsQueryCache cache;
+    private final ServerSocket server;
+    private final ExecutorService connections;
+    private final LongAdder requests = new LongAdder();
+    private volatile boolean closed;
+
+    /* serve queries on G from the given loopback port (0 for any free port) */
+    public TrainsServer(ConcurrentTrainsDigraph G, int port) throws IOException {
+        this(G, port, new TrainsQueryCache(DEFAULT_CACHE_SIZE));
+    }
+
+    /* serve queries on G with the given answer cache */
+    public TrainsServer(ConcurrentTrainsDigraph G, int port, TrainsQueryCache cache)
+        throws IOException {
+        this.graph = G;
+        this.cache = cache;
+        this.server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.connections = newThreadPerTaskExecutor();
+    }
+
+    /* one virtual thread per task if the runtime supports them, else a
+     * cached pool of platform threads */
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /* the port the server is listening on */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /* the cache of answers */
+    public TrainsQueryCache getCache() {
+        return cache;
+    }
+
+    /* number of requests answered so far */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /* accept connections until close() is called */
+    public void serve() throws IOException {
+        while (!closed)
+        {
+            final Socket socket;
+            try {
+                socket = server.accept();
+            }
+            catch (SocketException e) {
+                if (closed) return;     // closed while waiting
+                throw e;
+            }
+            connections.execute(new Runnable() {
+                public void run() { handle(socket); }
+            });
+        }
+    }
+
+    /* accept connections on a background thread */
+    public Thread start() {
+        Thread acceptor = new Thread("trains-server-accept") {
+            public void run() {
+                try {
+                    serve();
+                }
+                catch (IOException e) {
+                    System.err.println("trains server stopped: " + e.getMessage());
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return acceptor;
+    }
+
+    /* answer the requests of one connection, in order */
+    private void handle(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+            Writer out = new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.equals("quit")) break;
+                out.write(answer(line));
+                out.write('\n');
+                requests.increment();
+                if (!in.ready()) out.flush();   // nothing more pipelined: send
+            }
+            out.flush();
+        }
+        catch (IOException e) {
+            // the client went away; nothing to answer
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    /* the answer line for one request line */
+    public String answer(String line) {
+        try {
+            if (line.startsWith("add "))
+            {
+                String[] tokens = line.split("\\s+");
+                if (tokens.length != 4)
+                    throw new IllegalArgumentException("expected add FROM TO WEIGHT: " + line);
+                int weight;
+                try {
+                    weight = Integer.parseInt(tokens[3]);
+                }
+                catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("bad weight: " + line);
+                }
+                if (weight <= 0)
+                    throw new IllegalArgumentException("weight must be positive: " + line);
+                return "OK " + graph.addEdge(new DirectedEdge(tokens[1], tokens[2], weight));
+            }
+            if (line.equals("version")) return Long.toString(graph.getVersion());
+            if (line.equals("stats")) return cache.toString();
+            return cache.answer(TrainsQuery.parse(line), graph);
+        }
+        catch (RuntimeException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    /* stop accepting connections and wait briefly for open ones to finish */
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        connections.shutdown();
+        try {
+            connections.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* a client connection used by the self test: pipelines lines from a
+     * second thread while reading back one answer per line */
+    private static String[] exchange(int port, final String[] lines) throws IOException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            Thread sender = new Thread() {
+                public void run() {
+                    try {
+                        Writer out = new BufferedWriter(new OutputStreamWriter(
+                            socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+                        for (String line : lines) out.write(line + "\n");
+                        out.write("quit\n");
+                        out.flush();
+                    }
+                    catch (IOException e) {
+                        // the reader below sees the connection fail
+                    }
+                }
+            };
+            sender.start();
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+            String[] answers = new String[lines.length];
+            for (int i = 0; i < lines.length; i++) answers[i] = in.readLine();
+            return answers;
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    // serve a graph file, or run a self test without arguments
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            ConcurrentTrainsDigraph G = new ConcurrentTrainsDigraph(TrainsClient.readSnapshot(args[0]));
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+            TrainsServer server = new TrainsServer(G, port);
+            System.err.println("serving " + args[0] + " on localhost:" + server.getPort());
+            server.serve();
+            return;
+        }
+
+        ConcurrentTrainsDigraph G = new ConcurrentTrainsDigraph();
+        ConcurrentTrainsDigraph.Batch batch = G.batch();
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            batch.add(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        batch.commit();
+        final TrainsServer server = new TrainsServer(G, 0);
+        server.start();
+        final int port = server.getPort();
+
+        String[] questions = { "1 A-B-C", "2 A-D", "3 A-D-C", "4 A-E-B-C-D", "5 A-E-D", "6 C C",
+                               "7 A C", "8 A C", "9 B B", "10 C C", "8 A Z", "add A C 0", "add A C -2",
+                               "add A C 3", "8 A C", "stats" };
+        String[] answers = exchange(port, questions);
+        for (int i = 0; i < questions.length; i++) {
+            System.out.println(questions[i] + " : " + answers[i]);
+        }
+
+        // throughput: several connections, each pipelining its queries
+        final String[] load = new String[20000];
+        for (int i = 0; i < load.length; i++) load[i] = questions[i % 10];
+        Thread[] clients = new Thread[8];
+        long start = System.nanoTime();
+        for (int c = 0; c < clients.length; c++) {
+            clients[c] = new Thread() {
+                public void run() {
+                    try {
+                        exchange(port, load);
+                    }
+                    catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            clients[c].start();
+        }
+        for (Thread client : clients) client.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d queries on %d connections in %.2f s: %.0f queries/s%n",
+                          clients.length * load.length, clients.length, seconds,
+                          clients.length * load.length / seconds);
+        System.out.println("cache: " + server.getCache());
+        server.close();
+    }
+}
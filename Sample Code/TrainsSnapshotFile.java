@@ -0,0 +1,297 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsSnapshotFile.java
+ *  Execution:    java TrainsSnapshotFile input.txt graph.snap
+ *  Dependencies: TrainsCSR.java, MappedTrainsGraph.java, TrainsGraphLoader.java
+ *
+ *  Versioned binary file format for a TrainsCSR snapshot, so a large
+ *  network can be loaded without parsing text or rebuilding hash maps.
+ *  All numbers are little-endian. The file is
+ *
+ *      header   magic "TRNS", format version, V, E (ints), length of the
+ *               station table (long), CRC32C of everything after the
+ *               header (long)                                  32 bytes
+ *      stations V entries of (int length, UTF-8 bytes), padded to 8 bytes
+ *      arrays   out_offset[V+1] out_from[E] out_to[E] out_weight[E]
+ *               in_offset[V+1] in_from[E] in_weight[E] in_edge[E]
+ *
+ *  Reading memory-maps the file through a FileChannel and copies each
+ *  array out in bulk; nothing is sorted or hashed except the station
+ *  names. Mapping (see MappedTrainsGraph) skips the copy and searches the
+ *  arrays where they lie in the file.
+ *
+ *************************************************************************/
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+public class TrainsSnapshotFile {
+
+    public static final int MAGIC = 0x534E5254;    // "TRNS" read little-endian
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 32;
+    private static final int CHUNK = 1 << 20;      // bytes written at a time
+    private static final long WINDOW = 1L << 30;   // bytes mapped at a time
+
+    /* an array of ints to be written, read through G's accessors */
+    private interface IntArray {
+        int get(int i);
+    }
+
+    /* does the file start with the snapshot magic number? */
+    public static boolean isSnapshot(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            if (file.length() < HEADER_BYTES) return false;
+            ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            file.getChannel().read(header, 0);
+            return header.getInt(0) == MAGIC;
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /* write G to filename in snapshot format */
+    public static void write(final TrainsGraph G, String filename) throws IOException {
+        final int V = G.V(), E = G.E();
+        RandomAccessFile file = new RandomAccessFile(filename, "rw");
+        try {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            CRC32C crc = new CRC32C();
+            ByteBuffer buf = ByteBuffer.allocate(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_BYTES);
+
+            // station table
+            long names_len = 0;
+            for (int v = 0; v < V; v++)
+            {
+                byte[] name = G.nameOf(v).getBytes(StandardCharsets.UTF_8);
+                if (buf.remaining() < 4 + name.length) flush(channel, buf, crc);
+                if (buf.remaining() < 4 + name.length)
+                    buf = ByteBuffer.allocate(4 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+                buf.putInt(name.length);
+                buf.put(name);
+                names_len += 4 + name.length;
+            }
+            while (names_len % 8 != 0)
+            {
+                if (!buf.hasRemaining()) flush(channel, buf, crc);
+                buf.put((byte) 0);
+                names_len++;
+            }
+            if (buf.capacity() != CHUNK)
+            {
+                flush(channel, buf, crc);
+                buf = ByteBuffer.allocate(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            // adjacency arrays
+            buf = writeInts(channel, buf, crc, V + 1, new IntArray() {
+                public int get(int v) { return v < V ? G.outBegin(v) : E; } });
+            buf = writeInts(channel, buf, crc, E, new IntArray() {
+                public int get(int e) { return G.outFrom(e); } });
+            buf = writeInts(channel, buf, crc, E, new IntArray() {
+                public int get(int e) { return G.outTo(e); } });
+            buf = writeInts(channel, buf, crc, E, new IntArray() {
+                public int get(int e) { return G.outWeight(e); } });
+            buf = writeInts(channel, buf, crc, V + 1, new IntArray() {
+                public int get(int v) { return v < V ? G.inBegin(v) : E; } });
+            buf = writeInts(channel, buf, crc, E, new IntArray() {
+                public int get(int i) { return G.inFrom(i); } });
+            buf = writeInts(channel, buf, crc, E, new IntArray() {
+                public int get(int i) { return G.inWeight(i); } });
+            buf = writeInts(channel, buf, crc, E, new IntArray() {
+                public int get(int i) { return G.inEdge(i); } });
+            flush(channel, buf, crc);
+
+            // header last, once the checksum is known
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(V).putInt(E);
+            header.putLong(names_len).putLong(crc.getValue());
+            header.flip();
+            channel.write(header, 0);
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /* append n ints to the file through buf */
+    private static ByteBuffer writeInts(FileChannel channel, ByteBuffer buf, CRC32C crc,
+                                        int n, IntArray a) throws IOException {
+        for (int i = 0; i < n; i++)
+        {
+            if (buf.remaining() < 4) flush(channel, buf, crc);
+            buf.putInt(a.get(i));
+        }
+        return buf;
+    }
+
+    /* write out and checksum the contents of buf, leaving it empty */
+    private static void flush(FileChannel channel, ByteBuffer buf, CRC32C crc) throws IOException {
+        buf.flip();
+        crc.update(buf.duplicate());
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    /* read a snapshot, verifying its checksum */
+    public static TrainsCSR read(String filename) throws IOException {
+        return read(filename, true);
+    }
+
+    /* read a snapshot; verify = false skips the pass over the file that
+     * checks the CRC32C */
+    public static TrainsCSR read(String filename, boolean verify) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            Header header = new Header(channel, filename, verify);
+            int V = header.V, E = header.E;
+            String[] names = readNames(channel, header);
+
+            // adjacency arrays
+            long pos = header.arrays_pos;
+            int[] out_offset = readInts(channel, pos, V + 1); pos += 4L * (V + 1);
+            int[] out_from = readInts(channel, pos, E);       pos += 4L * E;
+            int[] out_to = readInts(channel, pos, E);         pos += 4L * E;
+            int[] out_weight = readInts(channel, pos, E);     pos += 4L * E;
+            int[] in_offset = readInts(channel, pos, V + 1);  pos += 4L * (V + 1);
+            int[] in_from = readInts(channel, pos, E);        pos += 4L * E;
+            int[] in_weight = readInts(channel, pos, E);      pos += 4L * E;
+            int[] in_edge = readInts(channel, pos, E);
+            return new TrainsCSR(names, out_offset, out_from, out_to, out_weight,
+                                 in_offset, in_from, in_weight, in_edge);
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /* open a snapshot for searching in place, verifying its checksum */
+    public static MappedTrainsGraph map(String filename) throws IOException {
+        return map(filename, true);
+    }
+
+    /* open a snapshot for searching in place: the adjacency arrays stay in
+     * the memory-mapped file and are paged in by the operating system as
+     * the searches touch them, so the graph may be larger than the heap.
+     * Only the station names are read onto the heap. */
+    public static MappedTrainsGraph map(String filename, boolean verify) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            Header header = new Header(channel, filename, verify);
+            return new MappedTrainsGraph(readNames(channel, header), channel,
+                                         header.arrays_pos, header.E);
+        }
+        finally {
+            file.close();   // the mappings stay valid after the file is closed
+        }
+    }
+
+    /* the checked header of a snapshot file */
+    private static final class Header {
+        final int V, E;
+        final long names_len, arrays_pos;
+        final String filename;
+
+        Header(FileChannel channel, String filename, boolean verify) throws IOException {
+            this.filename = filename;
+            long size = channel.size();
+            if (size < HEADER_BYTES) throw new IOException("not a snapshot file: " + filename);
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) throw new IOException("not a snapshot file: " + filename);
+            int format = header.getInt(4);
+            if (format != FORMAT_VERSION)
+                throw new IOException("unsupported snapshot version " + format + ": " + filename);
+            V = header.getInt(8);
+            E = header.getInt(12);
+            names_len = header.getLong(16);
+            long checksum = header.getLong(24);
+            arrays_pos = HEADER_BYTES + names_len;
+            if (V < 0 || V == Integer.MAX_VALUE || E < 0
+                || names_len < 0 || names_len > Integer.MAX_VALUE
+                || size != arrays_pos + 4L * (2L * (V + 1L) + 6L * E))
+                throw new IOException("truncated or corrupt snapshot: " + filename);
+
+            if (verify && checksum(channel, HEADER_BYTES, size - HEADER_BYTES) != checksum)
+                throw new IOException("snapshot checksum mismatch: " + filename);
+        }
+    }
+
+    /* read the station table, checking each entry against the table's
+     * length: without the checksum nothing else vouches for it */
+    private static String[] readNames(FileChannel channel, Header header) throws IOException {
+        String[] names = new String[header.V];
+        MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY,
+                                             HEADER_BYTES, header.names_len);
+        table.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] bytes = new byte[64];
+        for (int v = 0; v < header.V; v++)
+        {
+            int len = table.remaining() >= 4 ? table.getInt() : -1;
+            if (len < 0 || len > table.remaining())
+                throw new IOException("corrupt station table in snapshot: " + header.filename);
+            if (len > bytes.length) bytes = new byte[len];
+            table.get(bytes, 0, len);
+            names[v] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    /* copy n ints starting at byte pos out of the mapped file, a chunk of
+     * the mapping at a time, since one mapping cannot exceed 2 GB */
+    private static int[] readInts(FileChannel channel, long pos, int n) throws IOException {
+        int[] a = new int[n];
+        int i = 0;
+        for (IntBuffer chunk : MappedTrainsGraph.mapInts(channel, pos, n))
+        {
+            int len = chunk.remaining();
+            chunk.get(a, i, len);
+            i += len;
+        }
+        return a;
+    }
+
+    /* CRC32C of len bytes starting at pos, mapped a window at a time */
+    static long checksum(FileChannel channel, long pos, long len) throws IOException {
+        CRC32C crc = new CRC32C();
+        while (len > 0)
+        {
+            long n = Math.min(WINDOW, len);
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, n));
+            pos += n;
+            len -= n;
+        }
+        return crc.getValue();
+    }
+
+    // test method
+    public static void main(String[] args) throws IOException {
+        String input = args.length > 0 ? args[0] : "input.txt";
+        String output = args.length > 1 ? args[1] : "graph.snap";
+
+        long start = System.nanoTime();
+        TrainsCSR G = TrainsGraphLoader.loadSnapshot(input);
+        long parsed = System.nanoTime();
+        write(G, output);
+        long written = System.nanoTime();
+        TrainsCSR H = read(output);
+        long read = System.nanoTime();
+
+        System.out.printf("parse %.3f s, write %.3f s, read %.3f s%n", (parsed - start) / 1e9,
+                          (written - parsed) / 1e9, (read - written) / 1e9);
+        System.out.println(G.V() + " " + G.E() + " -> " + H.V() + " " + H.E()
+                           + (G.toString().equals(H.toString()) ? ", identical" : ", DIFFERENT"));
+    }
+}
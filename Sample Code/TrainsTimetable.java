@@ -0,0 +1,377 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsTimetable.java
+ *  Execution:    java TrainsTimetable [timetable.txt FROM TO HH:MM]
+ *  Dependencies: TrainsDigraph.java, DirectedEdge.java
+ *
+ *  Timetable of timed connections: a train leaving one station at a given
+ *  time and reaching the next at a later one. Where the graph only knows a
+ *  fixed weight per edge, the timetable answers "leaving A at 08:00, when
+ *  can I be at C at the earliest?" and "over the whole day, which
+ *  departures from A get me to C, and when do they arrive?".
+ *
+ *  Queries use the Connection Scan Algorithm. The connections are kept in
+ *  one flat int array, four ints (from, to, departure, arrival) to a
+ *  connection, sorted by departure time; an earliest arrival query is a
+ *  binary search for the first departure followed by a single forward
+ *  scan, which stops as soon as no later connection can arrive earlier. A
+ *  profile query is a single backward scan. There is no priority queue and
+ *  the scan reads memory in order, so each query costs a few milliseconds
+ *  even for a full day of millions of connections.
+ *
+ *  Stations are interned through a TrainsDigraph, so a timetable built on
+ *  a graph shares its vertex ids. Times are seconds after midnight (see
+ *  parseTime), and may run past 24:00 for overnight services. Changing
+ *  trains takes no time: any connection departing at or after the arrival
+ *  can be taken. Every connection must take at least one second, so a
+ *  connection that can feed another always departs before it and is
+ *  scanned first; connections departing at the same moment are scanned in
+ *  the order they were added.
+ *
+ *  The file format of load() is one connection per line, as FROM TO
+ *  DEPARTURE ARRIVAL separated by commas or white space, with times as
+ *  HH:MM or HH:MM:SS; blank lines and lines starting with # are skipped.
+ *
+ *************************************************************************/
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+public class TrainsTimetable {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    /* layout of a connection in the connection arrays */
+    private static final int FROM = 0, TO = 1, DEP = 2, ARR = 3, STRIDE = 4;
+    public static final int MAX_TIME = (1 << 30) - 1;  // latest time in seconds
+
+    private final TrainsDigraph stations;   // station names and ids
+    private int[] connections = new int[STRIDE * 1024]; // in the order added
+    private int num_connections = 0, num_stations = 0;
+    private volatile int[] sorted;          // sorted by departure, null after a change
+
+    /* one timed connection */
+    public static final class Connection {
+        private final String from, to;
+        private final int departure, arrival;
+
+        public Connection(String from, String to, int departure, int arrival) {
+            this.from = from;
+            this.to = to;
+            this.departure = departure;
+            this.arrival = arrival;
+        }
+
+        public String from()   { return from;      }
+        public String to()     { return to;        }
+        public int departure() { return departure; }
+        public int arrival()   { return arrival;   }
+
+        public String toString() {
+            return from + "->" + to + " " + formatTime(departure) + "-" + formatTime(arrival);
+        }
+    }
+
+    /* an empty timetable with its own station table */
+    public TrainsTimetable() {
+        this(new TrainsDigraph(0));
+    }
+
+    /* an empty timetable whose stations share the vertex ids of G */
+    public TrainsTimetable(TrainsDigraph G) {
+        this.stations = G;
+    }
+
+    /* the graph that interns the stations */
+    public TrainsDigraph stations() {
+        return stations;
+    }
+
+    /* add a connection leaving from at departure and reaching to at a later
+     * arrival */
+    public void addConnection(String from, String to, int departure, int arrival) {
+        if (departure < 0 || arrival <= departure || arrival > MAX_TIME)
+            throw new IllegalArgumentException("bad times for " + from + "->" + to + ": "
+                                               + departure + ", " + arrival);
+        int v = stations.addVertex(from), w = stations.addVertex(to);
+        if (STRIDE * num_connections == connections.length)
+            connections = Arrays.copyOf(connections, 2 * connections.length);
+        int k = STRIDE * num_connections++;
+        connections[k + FROM] = v;
+        connections[k + TO] = w;
+        connections[k + DEP] = departure;
+        connections[k + ARR] = arrival;
+        num_stations = Math.max(num_stations, Math.max(v, w) + 1);
+        sorted = null;
+    }
+
+    /* number of connections */
+    public int size() {
+        return num_connections;
+    }
+
+    /* the connections sorted by departure time; sorted once and shared
+     * until the next connection is added */
+    private int[] sorted() {
+        int[] c = sorted;
+        if (c == null)
+        {
+            synchronized (this) {
+                c = sorted;
+                if (c == null)
+                {
+                    // departure, then the position, so ties keep the order
+                    // the connections were added in
+                    long[] keys = new long[num_connections];
+                    for (int i = 0; i < num_connections; i++)
+                        keys[i] = (long) connections[STRIDE * i + DEP] << 32 | i;
+                    Arrays.sort(keys);
+                    c = new int[STRIDE * num_connections];
+                    for (int i = 0; i < num_connections; i++)
+                        System.arraycopy(connections, STRIDE * (int) keys[i], c, STRIDE * i, STRIDE);
+                    sorted = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /* index of the first connection departing at or after time */
+    private static int firstDeparting(int[] c, int time) {
+        int lo = 0, hi = c.length / STRIDE;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (c[STRIDE * mid + DEP] < time) lo = mid + 1;
+            else                              hi = mid;
+        }
+        return lo;
+    }
+
+    /* return the id of station V */
+    private int index(String V) {
+        int v = stations.indexOf(V);
+        if (v < 0) throw new IllegalArgumentException("no such vertex: " + V);
+        return v;
+    }
+
+    /* forward scan from s leaving at departure; fills arrival[] and, if
+     * not null, in_conn[] with the connection each station was reached by */
+    private void scan(int[] c, int s, int t, int departure, int[] arrival, int[] in_conn) {
+        Arrays.fill(arrival, INFINITY);
+        arrival[s] = departure;
+        int n = c.length / STRIDE;
+        for (int i = firstDeparting(c, departure), k = STRIDE * i; i < n; i++, k += STRIDE)
+        {
+            int dep = c[k + DEP];
+            if (dep >= arrival[t]) break;      // nothing later arrives earlier
+            int w = c[k + TO], arr = c[k + ARR];
+            if (arrival[c[k + FROM]] <= dep && arr < arrival[w])
+            {
+                arrival[w] = arr;
+                if (in_conn != null) in_conn[w] = i;
+            }
+        }
+    }
+
+    /* earliest time of arrival at dest leaving source at departure or
+     * later, or -1 if dest cannot be reached that day */
+    public int earliestArrival(String source, String dest, int departure) {
+        int s = index(source), t = index(dest);
+        int[] c = sorted();
+        int[] arrival = new int[Math.max(num_stations, Math.max(s, t) + 1)];
+        scan(c, s, t, departure, arrival, null);
+        return arrival[t] == INFINITY ? -1 : arrival[t];
+    }
+
+    /* the connections of a journey that reaches dest at the earliest
+     * possible time leaving source at departure or later, null if there is
+     * none; empty when source and dest are the same station */
+    public List<Connection> journey(String source, String dest, int departure) {
+        int s = index(source), t = index(dest);
+        int[] c = sorted();
+        int V = Math.max(num_stations, Math.max(s, t) + 1);
+        int[] arrival = new int[V], in_conn = new int[V];
+        scan(c, s, t, departure, arrival, in_conn);
+        if (arrival[t] == INFINITY) return null;
+        LinkedList<Connection> journey = new LinkedList<Connection>();
+        for (int v = t; v != s; )
+        {
+            int k = STRIDE * in_conn[v];
+            v = c[k + FROM];
+            journey.push(new Connection(stations.nameOf(v), stations.nameOf(c[k + TO]),
+                                        c[k + DEP], c[k + ARR]));
+        }
+        return journey;
+    }
+
+    /* every worthwhile departure from source to dest over the whole day */
+    public List<Connection> profile(String source, String dest) {
+        return profile(source, dest, 0, INFINITY);
+    }
+
+    /* the departures from source between earliest and latest that are worth
+     * taking to reach dest: one entry (source, dest, departure, arrival) for
+     * each, with the earliest arrival for that departure, in order of
+     * departure. A departure is left out when a later one arrives as early.
+     * Expand an entry into its connections with journey(). */
+    public List<Connection> profile(String source, String dest, int earliest, int latest) {
+        int s = index(source), t = index(dest);
+        List<Connection> profile = new ArrayList<Connection>();
+        if (s == t) return profile;
+        int[] c = sorted();
+        int V = Math.max(num_stations, Math.max(s, t) + 1);
+
+        // per station, the pairs (departure, arrival at dest) found so far,
+        // chained from the earliest departure; departures and arrivals both
+        // increase along a chain
+        int[] head = new int[V];
+        Arrays.fill(head, -1);
+        int[] pair_dep = new int[64], pair_arr = new int[64], pair_next = new int[64];
+        int num_pairs = 0;
+
+        int first = firstDeparting(c, earliest);
+        for (int i = c.length / STRIDE - 1, k = STRIDE * i; i >= first; i--, k -= STRIDE)
+        {
+            int v = c[k + FROM], w = c[k + TO], dep = c[k + DEP], arr = c[k + ARR];
+            if (v == t) continue;
+
+            // earliest arrival at dest after taking this connection
+            int reach;
+            if (w == t) reach = arr;
+            else
+            {
+                int p = head[w];
+                while (p != -1 && pair_dep[p] < arr) p = pair_next[p];
+                if (p == -1) continue;
+                reach = pair_arr[p];
+            }
+
+            // keep it unless a departure from v at least as late does as well
+            int h = head[v];
+            if (h != -1 && pair_arr[h] <= reach) continue;
+            if (h != -1 && pair_dep[h] == dep)
+            {
+                pair_arr[h] = reach;
+                continue;
+            }
+            if (num_pairs == pair_dep.length)
+            {
+                pair_dep = Arrays.copyOf(pair_dep, 2 * num_pairs);
+                pair_arr = Arrays.copyOf(pair_arr, 2 * num_pairs);
+                pair_next = Arrays.copyOf(pair_next, 2 * num_pairs);
+            }
+            pair_dep[num_pairs] = dep;
+            pair_arr[num_pairs] = reach;
+            pair_next[num_pairs] = h;
+            head[v] = num_pairs++;
+        }
+
+        for (int p = head[s]; p != -1 && pair_dep[p] <= latest; p = pair_next[p])
+            profile.add(new Connection(source, dest, pair_dep[p], pair_arr[p]));
+        return profile;
+    }
+
+    /* seconds after midnight of a time written HH:MM or HH:MM:SS */
+    public static int parseTime(String time) {
+        String[] parts = time.split(":");
+        if (parts.length < 2 || parts.length > 3)
+            throw new IllegalArgumentException("expected HH:MM or HH:MM:SS: " + time);
+        try {
+            int seconds = 0;
+            for (int i = 0; i < 3; i++)
+            {
+                int x = i < parts.length ? Integer.parseInt(parts[i]) : 0;
+                if (x < 0 || (i > 0 && x > 59))
+                    throw new IllegalArgumentException("expected HH:MM or HH:MM:SS: " + time);
+                seconds = 60 * seconds + x;
+            }
+            return seconds;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected HH:MM or HH:MM:SS: " + time);
+        }
+    }
+
+    /* a time in seconds after midnight as HH:MM, or HH:MM:SS when the
+     * seconds are not zero */
+    public static String formatTime(int seconds) {
+        if (seconds % 60 != 0)
+            return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+        return String.format("%02d:%02d", seconds / 3600, seconds / 60 % 60);
+    }
+
+    /* load a timetable file with its own station table */
+    public static TrainsTimetable load(String filename) throws IOException {
+        return load(filename, new TrainsDigraph(0));
+    }
+
+    /* load a timetable file whose stations share the vertex ids of G */
+    public static TrainsTimetable load(String filename, TrainsDigraph G) throws IOException {
+        TrainsTimetable timetable = new TrainsTimetable(G);
+        BufferedReader reader = new BufferedReader(new FileReader(filename), 1 << 16);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) continue;
+                String[] tokens = line.split("[,\\s]+");
+                if (tokens.length != 4)
+                    throw new IllegalArgumentException("expected FROM TO DEPARTURE ARRIVAL: " + line);
+                timetable.addConnection(tokens[0], tokens[1], parseTime(tokens[2]),
+                                        parseTime(tokens[3]));
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return timetable;
+    }
+
+    // test method
+    public static void main(String[] args) throws IOException {
+        if (args.length == 4) {
+            TrainsTimetable timetable = load(args[0]);
+            int departure = parseTime(args[3]);
+            long start = System.nanoTime();
+            List<Connection> journey = timetable.journey(args[1], args[2], departure);
+            System.out.printf("%s (%d connections, %.3f ms)%n", journey, timetable.size(),
+                              (System.nanoTime() - start) / 1e6);
+            return;
+        }
+
+        // the sample network as a morning timetable: each line runs every
+        // half hour, taking its weight in minutes
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+        TrainsTimetable timetable = new TrainsTimetable(G);
+        int offset = 0;
+        for (String edge : edges) {
+            int minutes = Integer.parseInt(edge.substring(2));
+            for (int dep = 7 * 60 + offset; dep < 10 * 60; dep += 30) {
+                timetable.addConnection(edge.substring(0, 1), edge.substring(1, 2),
+                                        60 * dep, 60 * (dep + minutes));
+            }
+            offset = (offset + 7) % 30;
+        }
+
+        int eight = parseTime("08:00");
+        String[][] queries = { {"A", "C"}, {"A", "E"}, {"B", "B"}, {"C", "A"} };
+        for (String[] q : queries) {
+            int arrival = timetable.earliestArrival(q[0], q[1], eight);
+            System.out.println(q[0] + " to " + q[1] + " leaving 08:00 : "
+                               + (arrival < 0 ? "NO SUCH ROUTE"
+                                  : formatTime(arrival) + " " + timetable.journey(q[0], q[1], eight)));
+        }
+        System.out.println("A to C from 08:00 to 09:00 : "
+                           + timetable.profile("A", "C", eight, parseTime("09:00")));
+    }
+}
@@ -0,0 +1,156 @@
+/*************************************************************************
+ *  Compilation:  javac TrainsTripCounter.java
+ *  Execution:    java TrainsTripCounter
+ *  Dependencies: TrainsDigraph.java, TrainsGraph.java, TrainsBFS.java
+ *                DirectedEdge.java
+ *
+ *  Counts the trips from a single source with a bounded number of stops
+ *  (questions 6 and 7) without enumerating them. ways[h][v] is the number
+ *  of trips from the source that end at v after exactly h stops, and
+ *  ways[h+1] is obtained from ways[h] by pushing every count along the
+ *  outgoing edges, so the work is O(max_hops * E) whatever the number of
+ *  trips. Only two layers are kept while counting, with a running total
+ *  per station of the trips of 1..h stops; the layer and the totals are
+ *  copied out only at the hop counts the counter was asked to record, so
+ *  memory is O(V) per recorded hop count rather than per hop. Counts that
+ *  do not fit in a long are marked as overflowed.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+
+public class TrainsTripCounter {
+
+    private static final long OVERFLOW = -1; // marks a count that exceeded a long
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8; // largest array size
+    private int[] recorded;      // the hop counts recorded, ascending
+    private long[] exactly;      // exactly[r*V + v] = trips to v with recorded[r] stops
+    private long[] at_most;      // at_most[r*V + v] = trips to v with 1..recorded[r] stops
+    private int num_vertices;
+    private TrainsGraph G;
+
+    /* count the trips from source with each of the given numbers of stops */
+    public TrainsTripCounter(TrainsDigraph G, String source, int... hops) {
+        this(G.snapshot(), source, hops);
+    }
+
+    /* count the trips from source over a snapshot, recording the counts
+     * for each of the given numbers of stops */
+    public TrainsTripCounter(TrainsGraph G, String source, int... hops) {
+        int s = G.indexOf(source);
+        if (s < 0) throw new IllegalArgumentException("no such vertex: " + source);
+        recorded = hops.clone();
+        Arrays.sort(recorded);
+        int n = 0; // drop repeated hop counts
+        for (int h : recorded)
+        {
+            if (h < 0) throw new IllegalArgumentException("negative hop count");
+            if (n == 0 || recorded[n - 1] != h) recorded[n++] = h;
+        }
+        recorded = Arrays.copyOf(recorded, n);
+        this.G = G;
+        num_vertices = G.V();
+        long size = (long) n * num_vertices;
+        if (size > MAX_ARRAY)
+            throw new IllegalArgumentException("cannot record " + n + " hop counts for "
+                                               + num_vertices + " vertices");
+        exactly = new long[(int) size];
+        at_most = new long[(int) size];
+        if (n == 0) return;
+
+        long[] curr = new long[num_vertices], next = new long[num_vertices];
+        long[] total = new long[num_vertices];
+        curr[s] = 1;
+        for (int h = 0, r = 0; ; h++)
+        {
+            if (h == recorded[r])
+            {
+                System.arraycopy(curr, 0, exactly, r * num_vertices, num_vertices);
+                System.arraycopy(total, 0, at_most, r * num_vertices, num_vertices);
+                if (++r == n) break;
+            }
+            Arrays.fill(next, 0);
+            for (int v = 0; v < num_vertices; v++)
+            {
+                long count = curr[v];
+                if (count == 0) continue;
+                for (int e = G.outBegin(v); e < G.outEnd(v); e++)
+                {
+                    int w = G.outTo(e);
+                    next[w] = add(next[w], count);
+                }
+            }
+            for (int v = 0; v < num_vertices; v++) total[v] = add(total[v], next[v]);
+            long[] t = curr;
+            curr = next;
+            next = t;
+        }
+    }
+
+    /* add two counts, either of which may already have overflowed */
+    private static long add(long a, long b) {
+        if (a == OVERFLOW || b == OVERFLOW) return OVERFLOW;
+        long sum = a + b;
+        return sum < 0 ? OVERFLOW : sum;
+    }
+
+    /* return the row of a recorded hop count */
+    private int row(int hops) {
+        int r = Arrays.binarySearch(recorded, hops);
+        if (r < 0) throw new IllegalArgumentException("hop count not recorded: " + hops);
+        return r;
+    }
+
+    /* number of trips from the source to dest with exactly hops stops; 0
+     * if dest is not in the graph */
+    public long countExactly(String dest, int hops) {
+        int r = row(hops), d = G.indexOf(dest);
+        if (d < 0) return 0;
+        long count = exactly[r * num_vertices + d];
+        if (count == OVERFLOW) throw new ArithmeticException("trip count overflow");
+        return count;
+    }
+
+    /* number of trips from the source to dest with between 1 and hops
+     * stops; 0 if dest is not in the graph */
+    public long countAtMost(String dest, int hops) {
+        int r = row(hops), d = G.indexOf(dest);
+        if (d < 0) return 0;
+        long total = at_most[r * num_vertices + d];
+        if (total == OVERFLOW) throw new ArithmeticException("trip count overflow");
+        return total;
+    }
+
+    // test method
+    public static void main(String[] args) {
+
+        TrainsDigraph G = new TrainsDigraph(5);
+        String[] edges = { "AB5", "BC4", "CD8", "DC8", "DE6", "AD5", "CE2", "EB3", "AE7" };
+        for (String edge : edges) {
+            G.addEdge(new DirectedEdge(edge.substring(0, 1), edge.substring(1, 2),
+                                       Integer.parseInt(edge.substring(2))));
+        }
+
+        // questions 6 and 7, checked against the exhaustive search
+        TrainsTripCounter c = new TrainsTripCounter(G, "C", TrainsBFS.MAX_STOPS);
+        System.out.println("C to C, at most " + TrainsBFS.MAX_STOPS + " stops = "
+                           + c.countAtMost("C", TrainsBFS.MAX_STOPS) + " (BFS: "
+                           + new TrainsBFS(G, "C", "C", 6).getTripCount() + ")");
+        TrainsTripCounter a = new TrainsTripCounter(G, "A", TrainsBFS.EXACT_STOPS);
+        System.out.println("A to C, exactly " + TrainsBFS.EXACT_STOPS + " stops = "
+                           + a.countExactly("C", TrainsBFS.EXACT_STOPS) + " (BFS: "
+                           + new TrainsBFS(G, "A", "C", 7).getTripCount() + ")");
+
+        // long hop limits stay polynomial
+        TrainsTripCounter big = new TrainsTripCounter(G, "A", 50, 100, 150, 200, 250, 300);
+        for (int hops = 50; hops <= 300; hops += 50) {
+            try {
+                System.out.println("A to C, exactly " + hops + " stops = "
+                                   + big.countExactly("C", hops));
+            }
+            catch (ArithmeticException e) {
+                System.out.println("A to C, exactly " + hops + " stops: " + e.getMessage());
+            }
+        }
+    }
+}